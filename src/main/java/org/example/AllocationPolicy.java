@@ -0,0 +1,13 @@
+package org.example;
+
+/**
+ * How one repayment is shared between a borrower's active loans.
+ */
+public enum AllocationPolicy {
+    /** Pays off the oldest loan before touching the next one. */
+    OLDEST_FIRST,
+    /** Pays off the most expensive loan first, which saves the most interest. */
+    HIGHEST_RATE_FIRST,
+    /** Splits the payment in proportion to what is still owed on each loan. */
+    PRO_RATA
+}
@@ -0,0 +1,136 @@
+package org.example;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Loan schedule arithmetic, in whole cents.
+ *
+ * Rates are annual and charged monthly (rate / 12). Interest is rounded
+ * half-even per installment, principal is split evenly with the remainder
+ * on the last installment, and the last installment always clears the
+ * balance exactly. The schedule and the quote paths share one kernel, so a
+ * quote is always what the stored schedule will add up to.
+ */
+public final class Amortization {
+    // Below this many quotes the fork/join overhead costs more than it saves
+    private static final int PARALLEL_THRESHOLD = 4096;
+
+    private Amortization() {
+    }
+
+    /**
+     * The full schedule, with the first installment due a month after start.
+     */
+    public static List<Installment> schedule(AmortizationMethod method, long principal, double annualRate,
+                                             int months, LocalDate start) {
+        long[] principalParts = new long[months];
+        long[] interestParts = new long[months];
+        run(method, principal, annualRate, months, principalParts, interestParts);
+
+        List<Installment> installments = new ArrayList<>(months);
+        for (int i = 0; i < months; i++) {
+            installments.add(new Installment(i + 1, start.plusMonths(i + 1), principalParts[i], interestParts[i]));
+        }
+        return installments;
+    }
+
+    /**
+     * Prices many what-if loans at once. Inputs and outputs are parallel
+     * arrays indexed by quote; nothing is allocated per quote, and large
+     * batches are split across cores.
+     */
+    public static void quote(AmortizationMethod method, long[] principal, double[] annualRate, int[] months,
+                             long[] firstPayment, long[] totalInterest) {
+        IntStream indexes = IntStream.range(0, principal.length);
+        if (principal.length >= PARALLEL_THRESHOLD) {
+            indexes = indexes.parallel();
+        }
+        indexes.forEach(i -> {
+            firstPayment[i] = firstPayment(method, principal[i], annualRate[i], months[i]);
+            totalInterest[i] = run(method, principal[i], annualRate[i], months[i], null, null);
+        });
+    }
+
+    /**
+     * Walks the schedule and returns the total interest. When the arrays
+     * are given, each installment's principal and interest are written to them.
+     */
+    static long run(AmortizationMethod method, long principal, double annualRate, int months,
+                    long[] principalOut, long[] interestOut) {
+        if (months < 1) {
+            throw new IllegalArgumentException("A loan needs at least one installment");
+        }
+        double monthlyRate = annualRate / 12;
+        long evenPrincipal = principal / months;
+        long flatInterest = flatInterest(principal, annualRate, months);
+        long annuityPayment = annuityPayment(principal, monthlyRate, months);
+
+        long balance = principal;
+        long totalInterest = 0;
+        for (int i = 0; i < months; i++) {
+            boolean last = i == months - 1;
+            long interest;
+            long principalPart;
+            switch (method) {
+                case FLAT -> {
+                    interest = last ? flatInterest - totalInterest : flatInterest / months;
+                    principalPart = last ? balance : evenPrincipal;
+                }
+                case REDUCING_BALANCE -> {
+                    interest = Money.multiply(balance, monthlyRate);
+                    principalPart = last ? balance : evenPrincipal;
+                }
+                case ANNUITY -> {
+                    interest = Money.multiply(balance, monthlyRate);
+                    principalPart = last ? balance : Math.min(balance, annuityPayment - interest);
+                }
+                default -> throw new IllegalArgumentException("Unknown method " + method);
+            }
+
+            if (principalOut != null) {
+                principalOut[i] = principalPart;
+                interestOut[i] = interest;
+            }
+            balance -= principalPart;
+            totalInterest += interest;
+        }
+        return totalInterest;
+    }
+
+    /**
+     * The first installment, worked out directly rather than by walking the
+     * schedule. Matches installment 1 of {@link #run}.
+     */
+    static long firstPayment(AmortizationMethod method, long principal, double annualRate, int months) {
+        if (months == 1) {
+            return switch (method) {
+                case FLAT -> principal + flatInterest(principal, annualRate, 1);
+                case REDUCING_BALANCE, ANNUITY -> principal + Money.multiply(principal, annualRate / 12);
+            };
+        }
+        double monthlyRate = annualRate / 12;
+        return switch (method) {
+            case FLAT -> principal / months + flatInterest(principal, annualRate, months) / months;
+            case REDUCING_BALANCE -> principal / months + Money.multiply(principal, monthlyRate);
+            case ANNUITY -> {
+                long interest = Money.multiply(principal, monthlyRate);
+                yield interest + Math.min(principal, annuityPayment(principal, monthlyRate, months) - interest);
+            }
+        };
+    }
+
+    private static long flatInterest(long principal, double annualRate, int months) {
+        return Money.multiply(principal, annualRate * months / 12);
+    }
+
+    // P * r / (1 - (1 + r)^-n), or an even split when there is no interest
+    private static long annuityPayment(long principal, double monthlyRate, int months) {
+        if (monthlyRate == 0) {
+            return Math.ceilDiv(principal, months);
+        }
+        return Money.multiply(principal, monthlyRate / (1 - Math.pow(1 + monthlyRate, -months)));
+    }
+}
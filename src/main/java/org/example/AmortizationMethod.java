@@ -0,0 +1,13 @@
+package org.example;
+
+/**
+ * How a loan's interest is charged and spread over its installments.
+ */
+public enum AmortizationMethod {
+    /** Interest on the original principal for the whole term, split evenly. */
+    FLAT,
+    /** Equal principal each month plus interest on what is still owed, so installments shrink. */
+    REDUCING_BALANCE,
+    /** One fixed installment, mostly interest at first and mostly principal at the end. */
+    ANNUITY
+}
@@ -0,0 +1,31 @@
+package org.example;
+
+/**
+ * Password hashing settings. Every value can be overridden with a
+ * {@code -Dledger.auth.*} system property.
+ *
+ * @param bcryptCost    log2 of the bcrypt work factor for new hashes; stored
+ *                      hashes with a different cost are upgraded at login
+ * @param workers       threads that run bcrypt, so logins cannot take every CPU
+ * @param queueCapacity logins allowed to wait for a worker before new ones are refused
+ * @param userCacheSize users kept in the identity cache
+ * @param userCacheTtlSeconds how long a cached user is trusted
+ * @param unknownUserTtlSeconds how long an unknown email is remembered as unknown
+ */
+public record AuthConfig(int bcryptCost,
+                         int workers,
+                         int queueCapacity,
+                         int userCacheSize,
+                         long userCacheTtlSeconds,
+                         long unknownUserTtlSeconds) {
+
+    public static AuthConfig fromSystemProperties() {
+        return new AuthConfig(
+                Integer.getInteger("ledger.auth.bcryptCost", 10),
+                Integer.getInteger("ledger.auth.workers", Math.max(1, Runtime.getRuntime().availableProcessors() / 2)),
+                Integer.getInteger("ledger.auth.queueCapacity", 256),
+                Integer.getInteger("ledger.auth.userCacheSize", 10_000),
+                Long.getLong("ledger.auth.userCacheTtlSeconds", 300),
+                Long.getLong("ledger.auth.unknownUserTtlSeconds", 30));
+    }
+}
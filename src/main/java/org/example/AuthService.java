@@ -0,0 +1,157 @@
+package org.example;
+
+import org.mindrot.jbcrypt.BCrypt;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Registration and login with bcrypt run on a small, bounded pool of its
+ * own, so a burst of logins queues here instead of occupying every caller
+ * thread. When the queue is full new logins fail fast with a
+ * {@link RejectedExecutionException} rather than piling up.
+ *
+ * A login is at most one query, and usually none: the user's row, from the
+ * {@link UserCache}, gives both whether the user exists and the hash to
+ * check. Hashes made with a different cost than the configured one are
+ * replaced after a successful check, while the plain password is still at
+ * hand.
+ */
+public class AuthService implements AutoCloseable {
+    public enum Status { SUCCESS, UNKNOWN_USER, WRONG_PASSWORD }
+
+    public record LoginResult(Status status, int userId) {
+        public boolean succeeded() {
+            return status == Status.SUCCESS;
+        }
+    }
+
+    private static final String INSERT_SQL = "INSERT INTO users(name, email, password) VALUES(?,?,?)";
+    // Only replace the hash we checked, in case the password changed meanwhile
+    private static final String REHASH_SQL = "UPDATE users SET password = ? WHERE id = ? AND password = ?";
+    private static final int SQLITE_CONSTRAINT = 19;
+
+    private final ConnectionManager connections;
+    private final UserCache users;
+    private final int cost;
+    private final ThreadPoolExecutor executor;
+    private final LongAdder rehashes = new LongAdder();
+
+    public AuthService(ConnectionManager connections, UserCache users, AuthConfig config) {
+        this.connections = connections;
+        this.users = users;
+        this.cost = config.bcryptCost();
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(config.workers(), config.workers(), 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(config.queueCapacity()),
+                task -> {
+                    Thread thread = new Thread(task, "bcrypt-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    public CompletableFuture<LoginResult> login(String email, String password) {
+        return submit(() -> {
+            UserIdentity user = users.get(email).orElse(null);
+            if (user == null) {
+                return new LoginResult(Status.UNKNOWN_USER, -1);
+            }
+            int userId = user.id();
+            String storedHash = user.passwordHash();
+
+            if (!BCrypt.checkpw(password, storedHash)) {
+                return new LoginResult(Status.WRONG_PASSWORD, userId);
+            }
+            if (costOf(storedHash) != cost) {
+                rehash(email, userId, storedHash, password);
+            }
+            return new LoginResult(Status.SUCCESS, userId);
+        });
+    }
+
+    /**
+     * Creates the user and completes with false if the email is already
+     * registered. The unique index on email is the existence check.
+     */
+    public CompletableFuture<Boolean> register(String name, String email, String password) {
+        return submit(() -> {
+            String hash = BCrypt.hashpw(password, BCrypt.gensalt(cost));
+            try (ConnectionManager.Lease lease = connections.writer()) {
+                PreparedStatement ps = lease.prepare(INSERT_SQL);
+                ps.setString(1, name);
+                ps.setString(2, email);
+                ps.setString(3, hash);
+                ps.executeUpdate();
+                return true;
+            } catch (SQLException e) {
+                if (e.getErrorCode() == SQLITE_CONSTRAINT) {
+                    return false;
+                }
+                throw e;
+            } finally {
+                // Drops a cached "unknown" for this email either way
+                users.invalidate(email);
+            }
+        });
+    }
+
+    private void rehash(String email, int userId, String oldHash, String password) throws SQLException {
+        String newHash = BCrypt.hashpw(password, BCrypt.gensalt(cost));
+        try (ConnectionManager.Lease lease = connections.writer()) {
+            PreparedStatement ps = lease.prepare(REHASH_SQL);
+            ps.setString(1, newHash);
+            ps.setInt(2, userId);
+            ps.setString(3, oldHash);
+            if (ps.executeUpdate() == 1) {
+                rehashes.increment();
+            }
+        }
+        users.invalidate(email);
+    }
+
+    // Hashes look like $2a$10$..., the two digits after the second $ are the cost
+    static int costOf(String hash) {
+        return Integer.parseInt(hash.substring(4, 6));
+    }
+
+    private interface Work<T> {
+        T run() throws SQLException;
+    }
+
+    private <T> CompletableFuture<T> submit(Work<T> work) {
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return work.run();
+                } catch (SQLException e) {
+                    throw new CompletionException(e);
+                }
+            }, executor);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    public long rehashCount() {
+        return rehashes.sum();
+    }
+
+    public int queuedLogins() {
+        return executor.getQueue().size();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,94 @@
+package org.example;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Nightly "best product" report: the deposit product that would earn each
+ * customer the most on their current balance over the projection term.
+ *
+ * Balances are read into one array and projected in a single batch. The
+ * report is written to a temporary file and moved over the previous one,
+ * so readers never see a half-written report.
+ */
+public class BestProductReportJob implements ScheduledJob {
+    static final String BALANCES_SQL =
+            "SELECT user_email, balance FROM account_balances WHERE balance > 0 ORDER BY user_email";
+    private static final int FETCH_SIZE = 1000;
+
+    private final ConnectionManager connections;
+    private final DepositRateSource rates;
+    private final int months;
+    private final Path file;
+
+    /** Where the rate table comes from; loaded again on every run so rate changes are picked up. */
+    @FunctionalInterface
+    public interface DepositRateSource {
+        DepositProjector load() throws SQLException, IOException;
+    }
+
+    public BestProductReportJob(ConnectionManager connections, DepositRateSource rates, int months, Path file) {
+        this.connections = connections;
+        this.rates = rates;
+        this.months = months;
+        this.file = file;
+    }
+
+    @Override
+    public void run(Context context) throws SQLException, IOException {
+        long start = System.nanoTime();
+        DepositProjector projector = rates.load();
+
+        List<String> emails = new ArrayList<>();
+        long[] balances = new long[1024];
+        try (ConnectionManager.Lease lease = connections.reader()) {
+            PreparedStatement ps = lease.prepare(BALANCES_SQL);
+            ps.setFetchSize(FETCH_SIZE);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    if (emails.size() == balances.length) {
+                        balances = Arrays.copyOf(balances, balances.length * 2);
+                    }
+                    balances[emails.size()] = rs.getLong(2);
+                    emails.add(rs.getString(1));
+                }
+            }
+        }
+
+        int n = emails.size();
+        long[] deposits = Arrays.copyOf(balances, n);
+        int[] best = new int[n];
+        long[] interest = new long[n];
+        projector.best(deposits, months, best, interest);
+
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (BufferedWriter out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            out.write("Email,Balance,Bank,AnnualRate,ProjectedInterest,Months");
+            out.newLine();
+            for (int i = 0; i < n; i++) {
+                if (best[i] < 0) {
+                    continue;
+                }
+                CsvExporter.writeField(out, emails.get(i));
+                out.write("," + Money.format(deposits[i]) + ",");
+                CsvExporter.writeField(out, projector.bank(best[i]));
+                out.write("," + projector.annualPercent(best[i]) + "," + Money.format(interest[i]) + "," + months);
+                out.newLine();
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        System.out.println("Best product report for " + context.slot().toLocalDate() + ": " + n
+                + " customers in " + (System.nanoTime() - start) / 1_000_000 + " ms, written to " + file);
+    }
+}
@@ -0,0 +1,17 @@
+package org.example;
+
+/**
+ * Point-in-time hit/miss counters of a cache.
+ */
+public record CacheStats(long hits, long misses) {
+
+    public double hitRate() {
+        long total = hits + misses;
+        return total == 0 ? 0.0 : (double) hits / total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("hits=%d, misses=%d, hitRate=%.1f%%", hits, misses, hitRate() * 100);
+    }
+}
@@ -0,0 +1,35 @@
+package org.example;
+
+import java.nio.file.Path;
+
+/**
+ * Settings for the transaction capture log. Capture is off unless
+ * {@code -Dledger.capture.dir} is set; every other value can be overridden
+ * with a {@code -Dledger.capture.*} system property.
+ *
+ * @param dir                 directory holding the segment files, or null when capture is off
+ * @param fsync               when appended records are forced to disk
+ * @param segmentRecords      records per segment file
+ * @param drainBatchSize      most records the drainer applies in one SQLite transaction
+ * @param drainIntervalMillis how long the drainer sleeps when it has caught up
+ */
+public record CaptureConfig(Path dir,
+                            FsyncPolicy fsync,
+                            int segmentRecords,
+                            int drainBatchSize,
+                            long drainIntervalMillis) {
+
+    public static CaptureConfig fromSystemProperties() {
+        String dir = System.getProperty("ledger.capture.dir");
+        return new CaptureConfig(
+                dir == null || dir.isBlank() ? null : Path.of(dir),
+                FsyncPolicy.parse(System.getProperty("ledger.capture.fsync", "millis:5")),
+                Integer.getInteger("ledger.capture.segmentRecords", 64 * 1024),
+                Integer.getInteger("ledger.capture.drainBatchSize", 5000),
+                Long.getLong("ledger.capture.drainIntervalMillis", 10));
+    }
+
+    public boolean enabled() {
+        return dir != null;
+    }
+}
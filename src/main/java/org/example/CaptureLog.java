@@ -0,0 +1,547 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Write-ahead capture of transactions for callers that cannot wait for a
+ * SQLite commit.
+ *
+ * An append copies the transaction into a fixed-width record in a
+ * memory-mapped segment file and returns; it is forced to disk according
+ * to the {@link FsyncPolicy}. A background drainer applies the records to
+ * the transactions table in large batches, and stores the last sequence it
+ * applied in capture_checkpoint in the same SQLite transaction, so every
+ * record is applied exactly once. Segments are deleted once drained. On
+ * start, records after the checkpoint in segments left by an earlier run
+ * are drained like new ones; a torn record at the end of a segment (its
+ * checksum does not match) marks where that run stopped writing.
+ *
+ * Until a record is drained it is not in the transactions table, so
+ * {@link #balance} adds the net amount of undrained records to the stored
+ * balance. A record the drainer cannot read is reported and skipped, and
+ * stops counting towards the balance. Records are stamped with the time
+ * they were captured.
+ */
+public class CaptureLog implements AutoCloseable {
+    static final int RECORD_SIZE = 1024;
+    static final int MAX_EMAIL_BYTES = 320;
+    static final int MAX_DESCRIPTION_BYTES = 400;
+
+    // Record layout: seq, capture time (epoch ms), amount, type, email and
+    // description lengths, then both strings at fixed offsets and a CRC-32C
+    // of the header and strings in the last four bytes
+    private static final int SEQ = 0;
+    private static final int MILLIS = 8;
+    private static final int AMOUNT = 16;
+    private static final int TYPE = 24;
+    private static final int EMAIL_LENGTH = 26;
+    private static final int DESCRIPTION_LENGTH = 28;
+    private static final int EMAIL = 30;
+    private static final int DESCRIPTION = EMAIL + MAX_EMAIL_BYTES;
+    private static final int CRC = RECORD_SIZE - 4;
+    private static final byte CREDIT = 1;
+    private static final byte DEBIT = 2;
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+    static final String CHECKPOINT_SQL = "SELECT last_seq FROM capture_checkpoint WHERE id = 1";
+    private static final String ADVANCE_SQL = "UPDATE capture_checkpoint SET last_seq = ? WHERE id = 1";
+    private static final DateTimeFormatter TIMESTAMP =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneOffset.UTC);
+
+    /** Reads an account's balance as stored in the database. */
+    @FunctionalInterface
+    public interface StoredBalance {
+        long read(String email) throws SQLException;
+    }
+
+    // One segment file; records fill it from slot 0 with consecutive sequence numbers
+    private static final class Segment {
+        final Path file;
+        final long firstSeq;
+        final int capacity;
+        final MappedByteBuffer map;
+        int count;      // records written; guarded by appendLock while the segment is active
+        int forced;     // records known to be on disk; guarded by appendLock
+
+        private Segment(Path file, long firstSeq, int capacity, MappedByteBuffer map) {
+            this.file = file;
+            this.firstSeq = firstSeq;
+            this.capacity = capacity;
+            this.map = map;
+        }
+
+        static Segment create(Path dir, long firstSeq, int capacity) throws IOException {
+            Path file = dir.resolve(String.format("%020d%s", firstSeq, SEGMENT_SUFFIX));
+            try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+                raf.setLength((long) capacity * RECORD_SIZE);
+                return new Segment(file, firstSeq, capacity,
+                        raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, raf.length()));
+            }
+        }
+
+        static Segment open(Path file) throws IOException {
+            String name = file.getFileName().toString();
+            long firstSeq = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+            try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+                int capacity = (int) (raf.length() / RECORD_SIZE);
+                return new Segment(file, firstSeq, capacity,
+                        raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, (long) capacity * RECORD_SIZE));
+            }
+        }
+
+        boolean contains(long seq) {
+            return seq >= firstSeq && seq < firstSeq + count;
+        }
+
+        long lastSeq() {
+            return firstSeq + count - 1;
+        }
+    }
+
+    private final ConnectionManager connections;
+    private final CaptureConfig config;
+
+    private final ReentrantLock appendLock = new ReentrantLock();
+    // Held for writing while a drained batch is committed and taken out of pending,
+    // so a balance never counts a record twice or not at all
+    private final ReentrantReadWriteLock drainLock = new ReentrantReadWriteLock();
+    private final List<Segment> segments = new CopyOnWriteArrayList<>();
+    private final ConcurrentHashMap<String, Long> pending = new ConcurrentHashMap<>();
+    private volatile Segment active;
+    private long nextSeq;
+    private volatile long appendedSeq;
+    private volatile long drainedSeq;
+    private volatile boolean running;
+    private Thread drainer;
+    private ScheduledExecutorService forcer;
+
+    private final LongAdder appends = new LongAdder();
+    private final LongAdder forces = new LongAdder();
+    private final LongAdder drainedRows = new LongAdder();
+    private final LongAdder drainBatches = new LongAdder();
+
+    /**
+     * Does no I/O; call {@link #start} once the schema is migrated.
+     */
+    public CaptureLog(ConnectionManager connections, CaptureConfig config) {
+        if (config.segmentRecords() < 1 || config.drainBatchSize() < 1) {
+            throw new IllegalArgumentException("Capture segments and drain batches need at least one record");
+        }
+        this.connections = connections;
+        this.config = config;
+    }
+
+    /**
+     * Recovers segments left by an earlier run, opens a new segment for
+     * appends and starts the drainer.
+     */
+    public void start() throws IOException, SQLException {
+        Files.createDirectories(config.dir());
+        long checkpoint;
+        try (ConnectionManager.Lease lease = connections.reader()) {
+            try (ResultSet rs = lease.prepare(CHECKPOINT_SQL).executeQuery()) {
+                checkpoint = rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+
+        List<Path> files;
+        try (Stream<Path> list = Files.list(config.dir())) {
+            files = list.filter(f -> f.getFileName().toString().endsWith(SEGMENT_SUFFIX)).sorted().toList();
+        }
+        // Never reuse a sequence the checkpoint has passed, even if the segments are gone
+        long last = checkpoint;
+        for (Path file : files) {
+            Segment segment = Segment.open(file);
+            recover(segment, checkpoint);
+            if (segment.count == 0 || segment.lastSeq() <= checkpoint) {
+                Files.delete(file);
+                continue;
+            }
+            segments.add(segment);
+            last = Math.max(last, segment.lastSeq());
+        }
+        if (last > checkpoint) {
+            System.out.println("Capture log: replaying " + (last - checkpoint) + " undrained records");
+        }
+
+        nextSeq = last + 1;
+        appendedSeq = last;
+        drainedSeq = checkpoint;
+        active = Segment.create(config.dir(), nextSeq, config.segmentRecords());
+        segments.add(active);
+        running = true;
+
+        drainer = new Thread(this::drain, "capture-drainer");
+        drainer.setDaemon(true);
+        drainer.start();
+        if (config.fsync().mode() == FsyncPolicy.Mode.MILLIS) {
+            forcer = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "capture-fsync");
+                t.setDaemon(true);
+                return t;
+            });
+            long every = config.fsync().n();
+            forcer.scheduleWithFixedDelay(() -> {
+                try {
+                    active.map.force();
+                    forces.increment();
+                } catch (RuntimeException e) {
+                    System.out.println("Error forcing capture log: " + e.getMessage());
+                    e.printStackTrace();
+                }
+            }, every, every, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Captures the transaction and returns its sequence number. Returns once
+     * the record is in the page cache, or on disk if the fsync policy says so.
+     */
+    public long append(Transaction transaction) throws IOException {
+        byte type = switch (transaction.type()) {
+            case "Credit" -> CREDIT;
+            case "Debit" -> DEBIT;
+            default -> throw new IllegalArgumentException("Cannot capture a " + transaction.type() + " transaction");
+        };
+        byte[] email = transaction.userEmail().getBytes(StandardCharsets.UTF_8);
+        byte[] description = transaction.description() == null
+                ? new byte[0]
+                : transaction.description().getBytes(StandardCharsets.UTF_8);
+        if (email.length > MAX_EMAIL_BYTES || description.length > MAX_DESCRIPTION_BYTES) {
+            throw new IllegalArgumentException("Email or description too long for a capture record");
+        }
+        long millis = System.currentTimeMillis();
+
+        appendLock.lock();
+        try {
+            if (!running) {
+                throw new IllegalStateException("Capture log is not running");
+            }
+            if (active.count == active.capacity) {
+                roll();
+            }
+            Segment segment = active;
+            long seq = nextSeq++;
+            encode(segment.map, segment.count * RECORD_SIZE, seq, millis, type, transaction.amount(),
+                    email, description);
+            segment.count++;
+            // Counted as pending before the drainer can see it, so the drainer never takes it out first
+            pending.merge(transaction.userEmail(), signed(type, transaction.amount()), CaptureLog::sum);
+            appendedSeq = seq;
+
+            FsyncPolicy fsync = config.fsync();
+            if (fsync.mode() == FsyncPolicy.Mode.EVERY_RECORD
+                    || (fsync.mode() == FsyncPolicy.Mode.RECORDS && segment.count - segment.forced >= fsync.n())) {
+                force(segment);
+            }
+            appends.increment();
+            return seq;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * The stored balance plus the net amount of the account's undrained records.
+     */
+    public long balance(String email, StoredBalance stored) throws SQLException {
+        drainLock.readLock().lock();
+        try {
+            return stored.read(email) + pending.getOrDefault(email, 0L);
+        } finally {
+            drainLock.readLock().unlock();
+        }
+    }
+
+    public long appendedSeq() {
+        return appendedSeq;
+    }
+
+    public long drainedSeq() {
+        return drainedSeq;
+    }
+
+    public String stats() {
+        return "appended=" + appends.sum() + ", forces=" + forces.sum() + ", drained=" + drainedRows.sum()
+                + " in " + drainBatches.sum() + " batches, behind=" + (appendedSeq - drainedSeq)
+                + ", segments=" + segments.size();
+    }
+
+    /**
+     * Stops accepting records, drains everything captured so far and
+     * deletes the drained segments. Whatever cannot be drained stays on disk
+     * for the next start, as does everything if the caller is interrupted
+     * while the drainer finishes.
+     */
+    @Override
+    public void close() {
+        appendLock.lock();
+        try {
+            running = false;
+        } finally {
+            appendLock.unlock();
+        }
+        try {
+            if (forcer != null) {
+                forcer.shutdown();
+                forcer.awaitTermination(1, TimeUnit.SECONDS);
+            }
+            if (drainer != null) {
+                LockSupport.unpark(drainer);
+                drainer.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        for (Segment segment : segments) {
+            segment.map.force();
+        }
+        release(true);
+    }
+
+    // Caller holds appendLock
+    private void roll() throws IOException {
+        force(active);
+        active = Segment.create(config.dir(), nextSeq, config.segmentRecords());
+        segments.add(active);
+    }
+
+    // Caller holds appendLock
+    private void force(Segment segment) {
+        if (segment.count > segment.forced) {
+            segment.map.force(segment.forced * RECORD_SIZE, (segment.count - segment.forced) * RECORD_SIZE);
+            segment.forced = segment.count;
+            forces.increment();
+        }
+    }
+
+    // Counts a recovered segment's valid records and marks those after the checkpoint as pending
+    private void recover(Segment segment, long checkpoint) {
+        int count = 0;
+        while (count < segment.capacity) {
+            long seq = segment.firstSeq + count;
+            Transaction t = decode(segment.map, count * RECORD_SIZE, seq);
+            if (t == null) {
+                break;
+            }
+            if (seq > checkpoint) {
+                pending.merge(t.userEmail(), signed(t), CaptureLog::sum);
+            }
+            count++;
+        }
+        segment.count = count;
+        segment.forced = count;
+    }
+
+    private void drain() {
+        long idleNanos = TimeUnit.MILLISECONDS.toNanos(config.drainIntervalMillis());
+        while (running || drainedSeq < appendedSeq) {
+            if (drainedSeq >= appendedSeq) {
+                LockSupport.parkNanos(this, idleNanos);
+                continue;
+            }
+            try {
+                drainBatch();
+                release(false);
+            } catch (SQLException | RuntimeException e) {
+                System.out.println("Error draining capture log: " + e.getMessage());
+                e.printStackTrace();
+                if (!running) {
+                    break;
+                }
+                LockSupport.parkNanos(this, TimeUnit.SECONDS.toNanos(1));
+            }
+        }
+    }
+
+    private void drainBatch() throws SQLException {
+        long from = drainedSeq + 1;
+        long to = Math.min(appendedSeq, drainedSeq + config.drainBatchSize());
+        List<Transaction> batch = new ArrayList<>((int) (to - from + 1));
+        int skipped = 0;
+        Segment segment = null;
+        for (long seq = from; seq <= to; seq++) {
+            if (segment == null || !segment.contains(seq)) {
+                segment = find(seq);
+            }
+            Transaction t = read(segment, seq);
+            if (t == null) {
+                System.out.println("Error draining capture log: record " + seq + " is missing or damaged, skipped");
+                skipped++;
+                continue;
+            }
+            batch.add(t);
+        }
+
+        try (ConnectionManager.Lease lease = connections.writer()) {
+            drainLock.writeLock().lock();
+            try {
+                Migration.inTransaction(lease.connection(), conn -> {
+                    TransactionBatchWriter.intern(lease, batch.stream().map(Transaction::description).toList());
+                    PreparedStatement insert = lease.prepare(TransactionBatchWriter.INSERT_SQL);
+                    try {
+                        for (Transaction t : batch) {
+                            TransactionBatchWriter.bind(insert, t);
+                            insert.addBatch();
+                        }
+                        insert.executeBatch();
+                    } catch (SQLException e) {
+                        insert.clearBatch();
+                        throw e;
+                    }
+                    PreparedStatement advance = lease.prepare(ADVANCE_SQL);
+                    advance.setLong(1, to);
+                    advance.executeUpdate();
+                });
+                if (skipped == 0) {
+                    for (Transaction t : batch) {
+                        pending.merge(t.userEmail(), -signed(t), CaptureLog::sum);
+                    }
+                    drainedSeq = to;
+                } else {
+                    // A skipped record's amount was counted when it was appended, but its
+                    // email and amount can no longer be trusted, so count pending again
+                    drainedSeq = to;
+                    recount();
+                }
+            } finally {
+                drainLock.writeLock().unlock();
+            }
+        }
+        drainedRows.add(batch.size());
+        drainBatches.increment();
+    }
+
+    // Rebuilds pending from the records still to be drained, leaving out any the
+    // drainer will skip. Caller holds the drain write lock.
+    private void recount() {
+        appendLock.lock();
+        try {
+            pending.clear();
+            Segment segment = null;
+            for (long seq = drainedSeq + 1; seq <= appendedSeq; seq++) {
+                if (segment == null || !segment.contains(seq)) {
+                    segment = find(seq);
+                }
+                Transaction t = read(segment, seq);
+                if (t != null) {
+                    pending.merge(t.userEmail(), signed(t), CaptureLog::sum);
+                }
+            }
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    private static Transaction read(Segment segment, long seq) {
+        return segment == null ? null : decode(segment.map, (int) (seq - segment.firstSeq) * RECORD_SIZE, seq);
+    }
+
+    private Segment find(long seq) {
+        for (Segment segment : segments) {
+            if (segment.contains(seq)) {
+                return segment;
+            }
+        }
+        return null;
+    }
+
+    // Deletes drained segments other than the active one, or every drained segment when closing
+    private void release(boolean closing) {
+        for (Segment segment : segments) {
+            if ((closing || segment != active) && segment.lastSeq() <= drainedSeq) {
+                segments.remove(segment);
+                try {
+                    Files.deleteIfExists(segment.file);
+                } catch (IOException e) {
+                    System.out.println("Error deleting capture segment " + segment.file + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private static void encode(MappedByteBuffer map, int offset, long seq, long millis, byte type, long amount,
+                               byte[] email, byte[] description) {
+        map.putLong(offset + SEQ, seq);
+        map.putLong(offset + MILLIS, millis);
+        map.putLong(offset + AMOUNT, amount);
+        map.put(offset + TYPE, type);
+        map.putShort(offset + EMAIL_LENGTH, (short) email.length);
+        map.putShort(offset + DESCRIPTION_LENGTH, (short) description.length);
+        map.put(offset + EMAIL, email);
+        map.put(offset + DESCRIPTION, description);
+        map.putInt(offset + CRC, checksum(map, offset, email.length, description.length));
+    }
+
+    // Returns null unless the slot holds an intact record with the expected sequence number
+    private static Transaction decode(ByteBuffer map, int offset, long seq) {
+        if (map.getLong(offset + SEQ) != seq) {
+            return null;
+        }
+        int emailLength = map.getShort(offset + EMAIL_LENGTH);
+        int descriptionLength = map.getShort(offset + DESCRIPTION_LENGTH);
+        byte type = map.get(offset + TYPE);
+        if (emailLength < 1 || emailLength > MAX_EMAIL_BYTES
+                || descriptionLength < 0 || descriptionLength > MAX_DESCRIPTION_BYTES
+                || (type != CREDIT && type != DEBIT)
+                || map.getInt(offset + CRC) != checksum(map, offset, emailLength, descriptionLength)) {
+            return null;
+        }
+        byte[] email = new byte[emailLength];
+        byte[] description = new byte[descriptionLength];
+        map.get(offset + EMAIL, email);
+        map.get(offset + DESCRIPTION, description);
+        return new Transaction(type == CREDIT ? "Credit" : "Debit", map.getLong(offset + AMOUNT),
+                new String(description, StandardCharsets.UTF_8), new String(email, StandardCharsets.UTF_8),
+                TIMESTAMP.format(Instant.ofEpochMilli(map.getLong(offset + MILLIS))));
+    }
+
+    private static int checksum(ByteBuffer map, int offset, int emailLength, int descriptionLength) {
+        CRC32C crc = new CRC32C();
+        crc.update(map.slice(offset, EMAIL));
+        crc.update(map.slice(offset + EMAIL, emailLength));
+        crc.update(map.slice(offset + DESCRIPTION, descriptionLength));
+        return (int) crc.getValue();
+    }
+
+    private static long signed(byte type, long amount) {
+        return type == CREDIT ? amount : -amount;
+    }
+
+    private static long signed(Transaction t) {
+        return "Credit".equals(t.type()) ? t.amount() : -t.amount();
+    }
+
+    // Merge function that drops an account from pending once it nets to zero
+    private static Long sum(Long a, Long b) {
+        long total = a + b;
+        return total == 0 ? null : total;
+    }
+}
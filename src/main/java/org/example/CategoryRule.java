@@ -0,0 +1,9 @@
+package org.example;
+
+/**
+ * A keyword that puts descriptions containing it in a category. When a
+ * description matches rules of several categories, the highest priority
+ * wins, then the longest keyword.
+ */
+public record CategoryRule(String keyword, int categoryId, int priority) {
+}
@@ -0,0 +1,195 @@
+package org.example;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import org.sqlite.SQLiteConfig;
+
+/**
+ * Hands out SQLite connections in WAL mode: one writer connection that is
+ * serialized behind a lock, plus a bounded pool of read-only connections.
+ * Callers borrow a {@link Lease} and give it back with try-with-resources.
+ * Each connection keeps its own {@link StatementCache}.
+ */
+public class ConnectionManager {
+    private final DatabaseConfig config;
+
+    // Writer: SQLite only allows one writer at a time anyway, so we queue in Java instead of on SQLITE_BUSY
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private PooledConnection writer;
+
+    // Readers: at most readPoolSize connections exist, idle ones are kept for reuse
+    private final Semaphore readPermits;
+    private final ConcurrentLinkedDeque<PooledConnection> idleReaders = new ConcurrentLinkedDeque<>();
+    private volatile int generation;
+
+    private final LongAdder statementHits = new LongAdder();
+    private final LongAdder statementMisses = new LongAdder();
+
+    public ConnectionManager(DatabaseConfig config) {
+        this.config = config;
+        this.readPermits = new Semaphore(Math.max(1, config.readPoolSize()), true);
+    }
+
+    /**
+     * Borrows the writer connection. Blocks until no other thread holds it.
+     * The lock is reentrant, so a method holding a writer lease can call
+     * another method that asks for one.
+     */
+    public Lease writer() throws SQLException {
+        writeLock.lock();
+        try {
+            if (writer == null || writer.connection.isClosed()) {
+                writer = open(false);
+            }
+            return new Lease(writer, writeLock::unlock);
+        } catch (SQLException e) {
+            writeLock.unlock();
+            throw e;
+        }
+    }
+
+    /**
+     * Borrows a read-only connection from the pool, opening a new one if
+     * none are idle. Blocks while all readPoolSize connections are in use.
+     */
+    public Lease reader() throws SQLException {
+        try {
+            readPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a read connection", e);
+        }
+
+        int borrowedGeneration = generation;
+        try {
+            PooledConnection conn = idleReaders.pollFirst();
+            while (conn != null && conn.connection.isClosed()) {
+                conn = idleReaders.pollFirst();
+            }
+            if (conn == null) {
+                conn = open(true);
+            }
+            PooledConnection leased = conn;
+            return new Lease(leased, () -> returnReader(leased, borrowedGeneration));
+        } catch (SQLException e) {
+            readPermits.release();
+            throw e;
+        }
+    }
+
+    private void returnReader(PooledConnection conn, int borrowedGeneration) {
+        try {
+            if (borrowedGeneration == generation && !conn.connection.isClosed()) {
+                idleReaders.offerFirst(conn);
+            } else {
+                conn.close();
+            }
+        } catch (SQLException e) {
+            System.out.println("Error returning read connection: " + e.getMessage());
+        } finally {
+            readPermits.release();
+        }
+    }
+
+    private PooledConnection open(boolean readOnly) throws SQLException {
+        SQLiteConfig sqliteConfig = new SQLiteConfig();
+        sqliteConfig.setReadOnly(readOnly);
+        Connection conn = DriverManager.getConnection(config.url(), sqliteConfig.toProperties());
+
+        try (Statement stmt = conn.createStatement()) {
+            if (!readOnly) {
+                // journal_mode is persistent in the file, readers pick it up from there
+                stmt.execute("PRAGMA journal_mode = WAL");
+            }
+            stmt.execute("PRAGMA synchronous = " + config.synchronous());
+            stmt.execute("PRAGMA cache_size = " + config.cacheSize());
+            stmt.execute("PRAGMA mmap_size = " + config.mmapSize());
+            stmt.execute("PRAGMA busy_timeout = " + config.busyTimeoutMs());
+        } catch (SQLException e) {
+            conn.close();
+            throw e;
+        }
+        return new PooledConnection(conn,
+                new StatementCache(conn, config.statementCacheSize(), statementHits, statementMisses));
+    }
+
+    /**
+     * Hit/miss counters summed over the statement caches of all connections.
+     */
+    public CacheStats statementCacheStats() {
+        return new CacheStats(statementHits.sum(), statementMisses.sum());
+    }
+
+    /**
+     * Closes the writer and every idle reader. Readers that are leased right
+     * now are closed when they come back. The next lease reopens connections.
+     */
+    public void close() throws SQLException {
+        writeLock.lock();
+        try {
+            generation++;
+            if (writer != null) {
+                writer.close();
+            }
+            writer = null;
+
+            PooledConnection conn;
+            while ((conn = idleReaders.pollFirst()) != null) {
+                conn.close();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private record PooledConnection(Connection connection, StatementCache statements) {
+
+        // Cached statements go first, they become invalid once the connection is gone
+        void close() throws SQLException {
+            statements.clear();
+            connection.close();
+        }
+    }
+
+    /**
+     * A borrowed connection. Closing the lease gives the connection back,
+     * it does not close the underlying connection.
+     */
+    public static final class Lease implements AutoCloseable {
+        private final PooledConnection pooled;
+        private final Runnable release;
+        private boolean released;
+
+        private Lease(PooledConnection pooled, Runnable release) {
+            this.pooled = pooled;
+            this.release = release;
+        }
+
+        public Connection connection() {
+            return pooled.connection();
+        }
+
+        /**
+         * Returns a cached prepared statement for this connection. The
+         * statement stays owned by the cache: close its ResultSets, not the statement.
+         */
+        public PreparedStatement prepare(String sql) throws SQLException {
+            return pooled.statements().prepare(sql);
+        }
+
+        @Override
+        public void close() {
+            if (!released) {
+                released = true;
+                release.run();
+            }
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package org.example;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streams a user's transactions to an RFC 4180 CSV file. Rows are read with
+ * a fetch size and written straight through a large buffer, so memory use
+ * does not grow with the size of the history.
+ */
+public class CsvExporter {
+    static final String SQL = """
+            SELECT timestamp, description, type, amount FROM transactions
+            WHERE user_email = ? AND timestamp >= ? AND timestamp < ?
+            ORDER BY timestamp, id
+            """;
+    private static final int FETCH_SIZE = 1000;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    // Open-ended ranges use sentinels so every export shares one cached statement
+    private static final String MIN_DATE = "0000-01-01";
+    private static final String MAX_DATE = "9999-12-31";
+
+    private final ConnectionManager connections;
+
+    public CsvExporter(ConnectionManager connections) {
+        this.connections = connections;
+    }
+
+    /**
+     * Writes the user's transactions between from and to (both inclusive,
+     * either may be null) to target and returns the number of rows written.
+     * With gzip set the file is written gzip-compressed.
+     */
+    public long export(String email, Path target, LocalDate from, LocalDate to, boolean gzip)
+            throws SQLException, IOException {
+        try (ConnectionManager.Lease lease = connections.reader();
+             Writer out = open(target, gzip)) {
+            PreparedStatement ps = lease.prepare(SQL);
+            ps.setFetchSize(FETCH_SIZE);
+            ps.setString(1, email);
+            ps.setString(2, from == null ? MIN_DATE : from.toString());
+            ps.setString(3, to == null ? MAX_DATE : to.plusDays(1).toString());
+
+            out.write("Date,Description,Type,Amount\r\n");
+            char[] amountBuffer = new char[24];
+            long rows = 0;
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    writeField(out, rs.getString(1));
+                    out.write(',');
+                    writeField(out, rs.getString(2));
+                    out.write(',');
+                    writeField(out, rs.getString(3));
+                    out.write(',');
+                    int start = Money.write(rs.getLong(4), amountBuffer);
+                    out.write(amountBuffer, start, amountBuffer.length - start);
+                    out.write("\r\n");
+                    rows++;
+                }
+            }
+            return rows;
+        }
+    }
+
+    private static Writer open(Path target, boolean gzip) throws IOException {
+        OutputStream stream = Files.newOutputStream(target);
+        if (gzip) {
+            stream = new GZIPOutputStream(stream, BUFFER_SIZE);
+        }
+        return new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), BUFFER_SIZE);
+    }
+
+    // RFC 4180: quote fields containing a comma, quote or line break, and double embedded quotes
+    static void writeField(Writer out, String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        boolean needsQuotes = false;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                needsQuotes = true;
+                break;
+            }
+        }
+        if (!needsQuotes) {
+            out.write(value);
+            return;
+        }
+
+        out.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                out.write('"');
+            }
+            out.write(c);
+        }
+        out.write('"');
+    }
+}
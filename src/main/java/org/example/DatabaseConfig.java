@@ -0,0 +1,29 @@
+package org.example;
+
+/**
+ * Connection settings for the SQLite ledger database.
+ * Every value can be overridden with a {@code -Dledger.db.*} system property.
+ */
+public record DatabaseConfig(String url,
+                             int readPoolSize,
+                             String synchronous,
+                             int cacheSize,
+                             long mmapSize,
+                             int busyTimeoutMs,
+                             int statementCacheSize,
+                             boolean groupCommit,
+                             int groupCommitWindowMicros) {
+
+    public static DatabaseConfig fromSystemProperties() {
+        return new DatabaseConfig(
+                System.getProperty("ledger.db.url", "jdbc:sqlite:users.db"),
+                Integer.getInteger("ledger.db.readPoolSize", 4),
+                System.getProperty("ledger.db.synchronous", "NORMAL"),
+                Integer.getInteger("ledger.db.cacheSize", -16000),     // negative = KiB, so 16 MB
+                Long.getLong("ledger.db.mmapSize", 256L * 1024 * 1024),
+                Integer.getInteger("ledger.db.busyTimeoutMs", 5000),
+                Integer.getInteger("ledger.db.statementCacheSize", 64),
+                Boolean.getBoolean("ledger.db.groupCommit"),
+                Integer.getInteger("ledger.db.groupCommitWindowMicros", 2000));
+    }
+}
@@ -1,159 +1,154 @@
 package org.example;
 
-import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.sql.*;
-import org.mindrot.jbcrypt.BCrypt;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
 public class DatabaseHandler {
-    private static final String DB_URL = "jdbc:sqlite:users.db";
-    static double balance = 0.0;
-    static Connection conn;
-
-    public static Connection getConnection() throws SQLException {
-        if (conn == null || conn.isClosed()) {
-            conn = DriverManager.getConnection(DB_URL);
-        }
-        return conn;
-    }
+    static final DatabaseConfig config = DatabaseConfig.fromSystemProperties();
+    static final ConnectionManager connections = new ConnectionManager(config);
+    private static final GroupCommitWriter groupCommit = config.groupCommit()
+            ? new GroupCommitWriter(connections, config.groupCommitWindowMicros(), 1000)
+            : null;
+    private static final CaptureConfig captureConfig = CaptureConfig.fromSystemProperties();
+    private static final CaptureLog capture = captureConfig.enabled()
+            ? new CaptureLog(connections, captureConfig)
+            : null;
+    private static final AuthConfig authConfig = AuthConfig.fromSystemProperties();
+    static final UserCache users = new UserCache(connections, authConfig.userCacheSize(),
+            authConfig.userCacheTtlSeconds(), authConfig.unknownUserTtlSeconds());
+    static final AuthService auth = new AuthService(connections, users, authConfig);
+    static final LoanBlocklist blocklist = new LoanBlocklist(connections);
+    private static final int LEDGER_LOCK_STRIPES = Integer.getInteger("ledger.service.lockStripes", 64);
+    static final LedgerService ledger = new LedgerService(connections, users, blocklist, groupCommit, capture,
+            LEDGER_LOCK_STRIPES);
+    static final LoanEngine loans = new LoanEngine(connections);
+    static final Journal journal = new Journal(connections);
+    private static final int REPAYMENT_BATCH_SIZE = 500;
+    static final RepaymentProcessor repayments = new RepaymentProcessor(connections, ledger, REPAYMENT_BATCH_SIZE);
+    private static JobScheduler scheduler;
+    static final ReminderMailbox reminderMailbox = new ReminderMailbox();
+    private static final int HISTORY_PAGE_SIZE = 20;
+    private static final int SAVINGS_CHUNK_SIZE = Integer.getInteger("ledger.savings.chunkSize", 1000);
+    private static final long BLOCKLIST_SWEEP_MINUTES = Long.getLong("ledger.loans.blocklistSweepMinutes", 15);
+    private static final int REMINDER_WINDOW_DAYS = Integer.getInteger("ledger.reminders.windowDays", 7);
+    private static final int REMINDER_BATCH_SIZE = 500;
+    private static final int DESCRIPTION_BACKFILL_MINUTES = Integer.getInteger("ledger.descriptions.backfillMinutes", 15);
+    private static final int DESCRIPTION_BACKFILL_CHUNK_SIZE = 5000;
+    private static final int REPORT_MONTHS = 12;
+    private static final int REPORT_TOP_MERCHANTS = 5;
+    private static final int REPORT_AVERAGE_DAYS = 30;
+    private static final int PROJECTION_MONTHS = Integer.getInteger("ledger.reports.projectionMonths", 12);
+    private static final double SAVINGS_ANNUAL_RATE = Double.parseDouble(
+            System.getProperty("ledger.savings.annualInterestRate", "0"));
 
     // Static block to initialize database table without requiring a main method
     static {
         try {
-            conn = DriverManager.getConnection(DB_URL);
             createTables();
+            if (capture != null) {
+                capture.start();
+            }
+            blocklist.refresh();
+            blocklist.start(BLOCKLIST_SWEEP_MINUTES, TimeUnit.MINUTES);
 
             System.out.println("Connected to SQLite database successfully.");
         } catch (SQLException e) {
             System.out.println("Error connecting to database: " + e.getMessage());
+        } catch (IOException e) {
+            System.out.println("Error opening capture log: " + e.getMessage());
         }
     }
 
     public static void createTables() throws SQLException {
-        String sql = "CREATE TABLE IF NOT EXISTS users (" +
-                "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
-                "name TEXT NOT NULL, " +
-                "email TEXT NOT NULL UNIQUE, " +
-                "password TEXT NOT NULL)";
-
-
-        try (Statement stmt = conn.createStatement()) {
-            stmt.executeUpdate(sql);
-
-            // transaction table
-            stmt.executeUpdate("""
-                CREATE TABLE IF NOT EXISTS transactions (
-                    id INTEGER PRIMARY KEY AUTOINCREMENT,
-                    type TEXT NOT NULL,
-                    amount REAL NOT NULL,
-                    description TEXT NOT NULL,
-                    user_email TEXT NOT NULL,
-                    timestamp DATETIME DEFAULT CURRENT_TIMESTAMP,
-                    FOREIGN KEY (user_email) REFERENCES users(email)
-                );
-                """);
-
-            // loans table
-            stmt.executeUpdate("""
-                CREATE TABLE IF NOT EXISTS loans (
-                    id INTEGER PRIMARY KEY AUTOINCREMENT,
-                    user_id INTEGER NOT NULL,
-                    principal_amount REAL NOT NULL,
-                    interest_rate REAL NOT NULL,
-                    repayment_period INTEGER NOT NULL,
-                    outstanding_balance REAL NOT NULL,
-                    status TEXT NOT NULL,
-                    created_at DATETIME,
-                    FOREIGN KEY (user_id) REFERENCES users(id)
-                );
-                """);
-
-            // savings table
-            stmt.executeUpdate("""
-                CREATE TABLE IF NOT EXISTS savings (
-                    id INTEGER PRIMARY KEY AUTOINCREMENT,
-                    user_email TEXT NOT NULL,
-                    amount REAL NOT NULL,
-                    timestamp DATETIME DEFAULT CURRENT_TIMESTAMP,
-                    FOREIGN KEY (user_email) REFERENCES users(email)
-                );
-                """);
-
-
-            ResultSet rs = stmt.executeQuery("""
-                SELECT SUM(CASE WHEN type='Credit' THEN amount ELSE -amount END) AS balance 
-                FROM transactions
-                """);
-            if (rs.next()) {
-                balance = rs.getDouble("balance");
-            }
-        } catch (SQLException e) {
-            System.out.println("Error creating tables: " + e.getMessage());
-            e.printStackTrace();
-        }
+        new SchemaMigrator(connections, Migrations.all()).migrate();
     }
 
     public boolean userExists(String email) {
-        String sql = "SELECT email FROM users WHERE email = ?";
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-             PreparedStatement pstmt = getConnection().prepareStatement(sql)) {
-
-            pstmt.setString(1, email);
-            ResultSet rs = pstmt.executeQuery();
-            return rs.next();
+        try {
+            return users.get(email).isPresent();
         } catch (SQLException e) {
             System.out.println("Error checking user: " + e.getMessage());
             return false;
         }
     }
 
-    public void insertUser(String name, String email, String password) {
-        String hashedPassword = BCrypt.hashpw(password, BCrypt.gensalt()); // 🔐 Hashing password
-        String sql = "INSERT INTO users(name, email, password) VALUES(?,?,?)";
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-
-            pstmt.setString(1, name);
-            pstmt.setString(2, email);
-            pstmt.setString(3, hashedPassword);
-            pstmt.executeUpdate();
-            System.out.println("User inserted successfully.");
-        } catch (SQLException e) {
-            System.out.println("Error inserting user: " + e.getMessage());
+    /**
+     * Blocking form of {@link AuthService#register}; returns false if the
+     * email is already registered.
+     */
+    public boolean insertUser(String name, String email, String password) {
+        try {
+            boolean inserted = auth.register(name, email, password).join();
+            System.out.println(inserted ? "User inserted successfully." : "Error inserting user: email already registered");
+            return inserted;
+        } catch (CompletionException e) {
+            System.out.println("Error inserting user: " + e.getCause().getMessage());
+            return false;
         }
     }
 
+    /**
+     * Blocking form of {@link AuthService#login}.
+     */
     public boolean validateUser(String email, String password) {
-        String sql = "SELECT password FROM users WHERE email = ?";
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-             PreparedStatement pstmt = getConnection().prepareStatement(sql)) {
-
-            pstmt.setString(1, email);
-            ResultSet rs = pstmt.executeQuery();
-
-            if (rs.next()) {
-                String storedHash = rs.getString("password");
-                return BCrypt.checkpw(password, storedHash); // ✅ Check bcrypt hash
-            }
-        } catch (SQLException e) {
-            System.out.println("Error validating user: " + e.getMessage());
+        try {
+            return auth.login(email, password).join().succeeded();
+        } catch (CompletionException e) {
+            System.out.println("Error validating user: " + e.getCause().getMessage());
+            return false;
         }
-        return false;
     }
 
-    public static void showHistory() {
+    /**
+     * Prints the user's history one page at a time, newest first, and lets
+     * them move to older or newer pages.
+     */
+    public static void showHistory(String email, Scanner scanner) {
         System.out.println("==Transaction History==");
-        try (Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery("SELECT * FROM transactions ORDER BY id DESC")) {
-
-            System.out.println("ID | Type   | Amount  | Description");
-            System.out.println("-----------------------------------");
-            while (rs.next()) {
-                System.out.printf("%-2d | %-6s | %7.2f | %s\n",
-                        rs.getInt("id"),
-                        rs.getString("type"),
-                        rs.getDouble("amount"),
-                        rs.getString("description"));
+        TransactionHistory history = new TransactionHistory(connections);
+        try {
+            HistoryPage page = history.latest(email, HISTORY_PAGE_SIZE);
+            while (true) {
+                System.out.println("ID | Type   | Amount  | Description | Date");
+                System.out.println("-----------------------------------------------");
+                for (HistoryPage.Entry entry : page.entries()) {
+                    System.out.printf("%-2d | %-6s | %7s | %s | %s\n",
+                            entry.id(),
+                            entry.type(),
+                            Money.format(entry.amount()),
+                            entry.description(),
+                            entry.timestamp());
+                }
+                if (page.entries().isEmpty()) {
+                    System.out.println("No transactions.");
+                }
+
+                if (!page.hasOlder() && !page.hasNewer()) {
+                    return;
+                }
+                System.out.print((page.hasOlder() ? "[o]lder " : "") + (page.hasNewer() ? "[n]ewer " : "") + "[q]uit: ");
+                String choice = scanner.nextLine().trim().toLowerCase();
+                if (choice.equals("o") && page.hasOlder()) {
+                    page = history.olderThan(email, page.olderCursor(), HISTORY_PAGE_SIZE);
+                } else if (choice.equals("n") && page.hasNewer()) {
+                    page = history.newerThan(email, page.newerCursor(), HISTORY_PAGE_SIZE);
+                } else if (choice.equals("q")) {
+                    return;
+                }
             }
         } catch (SQLException e) {
             System.err.println("Error retrieving transaction history:");
@@ -161,89 +156,139 @@ public class DatabaseHandler {
         }
     }
 
-    public static void saveTransaction(String type, double amount, String description, String email) {
-        String sql = "INSERT INTO transactions(type, amount, description, user_email) VALUES(?,?,?,?)";
+    /**
+     * Debits the account, and moves the user's savings percentage into
+     * savings, through {@link LedgerService}. Returns null if the database failed.
+     */
+    public LedgerService.Result debit(String email, long amount, String description) {
+        try {
+            return ledger.debit(email, amount, description);
+        } catch (SQLException e) {
+            System.err.println("Error saving transaction:");
+            e.printStackTrace();
+            return null;
+        }
+    }
 
-        try (PreparedStatement ps = getConnection().prepareStatement(sql)) {
-            ps.setString(1, type);
-            ps.setDouble(2, amount);
-            ps.setString(3, description);
-            ps.setString(4, email);
-            ps.executeUpdate();
+    public LedgerService.Result credit(String email, long amount, String description) {
+        try {
+            return ledger.credit(email, amount, description);
         } catch (SQLException e) {
             System.err.println("Error saving transaction:");
             e.printStackTrace();
+            return null;
         }
     }
 
+    /**
+     * Shows the user the reminders from the latest sweep. No query: the
+     * sweep runs as a background job, see {@link LoanReminderEngine}.
+     */
     public static void checkLoanReminders(int userId) {
-        String query = "SELECT created_at, repayment_period, outstanding_balance FROM loans WHERE user_id = ? AND status = 'active'";
-
-        try (PreparedStatement ps = getConnection().prepareStatement(query)) {
-            ps.setInt(1, userId);
-            ResultSet rs = ps.executeQuery();
-
-            java.time.LocalDate today = java.time.LocalDate.now();
-            java.time.format.DateTimeFormatter fmt = java.time.format.DateTimeFormatter.ofPattern("yyyy-MM-dd");
+        List<LoanReminder> reminders = reminderMailbox.forUser(userId);
+        if (reminders.isEmpty()) {
+            System.out.println("No loan repayments due within the next " + REMINDER_WINDOW_DAYS + " days.");
+            return;
+        }
+        reminders.forEach(System.out::println);
+    }
 
-            boolean hasReminder = false;
+    static void exportToCSV (String email) {
+        exportToCSV(email, Path.of("transaction_history.csv"), null, null, false);
+    }
 
-            while (rs.next()) {
-                java.sql.Timestamp timestamp = rs.getTimestamp("created_at");
-                java.time.LocalDate createdDate = timestamp.toLocalDateTime().toLocalDate();
+    static void exportToCSV(String email, Path outputFile, LocalDate from, LocalDate to, boolean gzip) {
+        try {
+            long rows = new CsvExporter(connections).export(email, outputFile, from, to, gzip);
+            System.out.println("Successfully exported " + rows + " transactions to " + outputFile);
+        } catch (Exception e) {
+            System.out.println("Error exporting to CSV: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
 
-                int months = rs.getInt("repayment_period");
-                java.time.LocalDate dueDate = createdDate.plusMonths(months);
+    static void importStatement(String email, Path inputFile) {
+        try {
+            TransactionImporter importer = new TransactionImporter(connections, 5000);
+            ImportReport report = inputFile.toString().toLowerCase().endsWith(".ofx")
+                    ? importer.importOfx(inputFile, email)
+                    : importer.importCsv(inputFile, email);
+
+            System.out.println(report);
+            report.rejected().stream().limit(10).forEach(r ->
+                    System.out.println("  Rejected line " + r.line() + " (" + r.reason() + "): " + r.content()));
+        } catch (Exception e) {
+            System.out.println("Error importing statement: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
 
-                long daysLeft = java.time.temporal.ChronoUnit.DAYS.between(today, dueDate);
+    /**
+     * Prints the account balance at the end of the given day, from the
+     * journal rather than the running balance.
+     */
+    static void showBalanceAsOf(String email, LocalDate date) {
+        try {
+            Journal.Balance balance = journal.balanceAsOf(email, date);
+            System.out.println("Balance at end of " + date + ": $" + Money.format(balance.balance()));
+        } catch (SQLException e) {
+            System.out.println("Error reading balance history: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
 
-                if (daysLeft >= 0 && daysLeft <= 7) {
-                    double balance = rs.getDouble("outstanding_balance");
-                    System.out.printf("Reminder: RM %.2f loan is due on %s (in %d days).\n",
-                            balance, dueDate, daysLeft);
-                    hasReminder = true;
-                }
+    /**
+     * Prints the user's spending report: the last months' totals, where the
+     * money went and the recent daily average. Loads the user's history into
+     * columns once, then runs every report on those.
+     */
+    static void showSpendingReport(String email) {
+        try {
+            SpendingAnalytics analytics = new SpendingAnalytics(SpendingColumns.forUser(connections, email));
+            List<SpendingAnalytics.MonthlyTotal> months = analytics.monthlyTotals();
+            if (months.isEmpty()) {
+                System.out.println("No transactions yet.");
+                return;
             }
-
-            if (!hasReminder) {
-                System.out.println("No loan repayments due within the next 7 days.");
+            System.out.println("Month      Credits        Debits         Net");
+            for (SpendingAnalytics.MonthlyTotal m : months.subList(Math.max(0, months.size() - REPORT_MONTHS),
+                    months.size())) {
+                System.out.printf("%s  %12s  %12s  %12s%n", m.month(), Money.format(m.credits()),
+                        Money.format(m.debits()), Money.format(m.net()));
             }
-
-        } catch (Exception e) {
-            System.out.println("Error checking loan reminders: " + e.getMessage());
+            System.out.println("\nBy category:");
+            for (SpendingAnalytics.CategoryTotal t : analytics.categoryBreakdown()) {
+                System.out.printf("%-30s $%s (%d)%n", t.category(), Money.format(t.spent()), t.transactions());
+            }
+            System.out.println("\nTop merchants:");
+            for (SpendingAnalytics.DescriptionTotal t : analytics.topMerchants(REPORT_TOP_MERCHANTS)) {
+                System.out.printf("%-30s $%s (%d)%n", t.description(), Money.format(t.spent()), t.transactions());
+            }
+            // The columns count days in UTC
+            List<SpendingAnalytics.DailySpend> days = analytics.dailySpending(REPORT_AVERAGE_DAYS,
+                    LocalDate.now(ZoneOffset.UTC));
+            System.out.println("\n" + REPORT_AVERAGE_DAYS + "-day average spend: $"
+                    + Money.format(days.getLast().movingAverage()) + " per day");
+        } catch (SQLException e) {
+            System.out.println("Error building spending report: " + e.getMessage());
             e.printStackTrace();
         }
     }
 
-    static void exportToCSV (String email) {
-        String outputFile = "transaction_history.csv";
-
-        String sql = "SELECT timestamp, description, type, amount FROM transactions WHERE user_email = ?";
-
-        try (Statement stmt = conn.createStatement();
-             PreparedStatement ps = getConnection().prepareStatement(sql)) {
-
-            ps.setString(1, email);
-            ResultSet rs = ps.executeQuery();
-
-            try (FileWriter fw = new FileWriter(outputFile)) {
-                // Write CSV headers
-                fw.write("Date,Description,Type,Amount\n");
-
-                while (rs.next()) {
-                    String row = String.format("%s,%s,%s,%.2f\n",
-                            rs.getString("timestamp"),
-                            rs.getString("description").replace(",", ";"),  // Handle commas in description
-                            rs.getString("type"),
-                            rs.getDouble("amount"));
-                    fw.write(row);
-                }
-
-                System.out.println("Successfully exported transactions to " + outputFile);
+    /**
+     * The user's account balance in cents.
+     */
+    public long getBalance(String email) {
+        String sql = "SELECT balance FROM account_balances WHERE user_email = ?";
+        try (ConnectionManager.Lease lease = connections.reader()) {
+            PreparedStatement pstmt = lease.prepare(sql);
+            pstmt.setString(1, email);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getLong("balance") : 0;
             }
-        } catch (Exception e) {
-            System.out.println("Error exporting to CSV: " + e.getMessage());
-            e.printStackTrace();
+        } catch (SQLException e) {
+            System.out.println("Error reading balance: " + e.getMessage());
+            return 0;
         }
     }
 
@@ -251,33 +296,32 @@ public class DatabaseHandler {
 
     public void activateSavings(String userEmail, double percentage) {
         String checkSql = "SELECT user_email FROM savings WHERE user_email = ?";
-        String updateSql = "UPDATE savings SET amount = ? WHERE user_email = ?";
-        String insertSql = "INSERT INTO savings(user_email, amount) VALUES (?, ?)";
+        String updateSql = "UPDATE savings SET percentage = ? WHERE user_email = ?";
+        String insertSql = "INSERT INTO savings(user_email, percentage) VALUES (?, ?)";
 
-        try (PreparedStatement checkStmt = getConnection().prepareStatement(checkSql)) {
+        try (ConnectionManager.Lease lease = connections.writer()) {
+            PreparedStatement checkStmt = lease.prepare(checkSql);
             checkStmt.setString(1, userEmail);
             try (ResultSet rs = checkStmt.executeQuery()) {
                 if (rs.next()) {
-                    try (PreparedStatement updateStmt = getConnection().prepareStatement(updateSql)) {
-                        updateStmt.setDouble(1, percentage);
-                        updateStmt.setString(2, userEmail);
-                        int updated = updateStmt.executeUpdate();
-                        if (updated > 0) {
-                            System.out.println("Savings activated and updated for userEmail=" + userEmail);
-                        } else {
-                            System.out.println("Failed to update savings for userEmail=" + userEmail);
-                        }
+                    PreparedStatement updateStmt = lease.prepare(updateSql);
+                    updateStmt.setDouble(1, percentage);
+                    updateStmt.setString(2, userEmail);
+                    int updated = updateStmt.executeUpdate();
+                    if (updated > 0) {
+                        System.out.println("Savings activated and updated for userEmail=" + userEmail);
+                    } else {
+                        System.out.println("Failed to update savings for userEmail=" + userEmail);
                     }
                 } else {
-                    try (PreparedStatement insertStmt = getConnection().prepareStatement(insertSql)) {
-                        insertStmt.setString(1, userEmail);
-                        insertStmt.setDouble(2, percentage);
-                        int inserted = insertStmt.executeUpdate();
-                        if (inserted > 0) {
-                            System.out.println("Savings activated for userEmail=" + userEmail);
-                        } else {
-                            System.out.println("Failed to insert savings for userEmail=" + userEmail);
-                        }
+                    PreparedStatement insertStmt = lease.prepare(insertSql);
+                    insertStmt.setString(1, userEmail);
+                    insertStmt.setDouble(2, percentage);
+                    int inserted = insertStmt.executeUpdate();
+                    if (inserted > 0) {
+                        System.out.println("Savings activated for userEmail=" + userEmail);
+                    } else {
+                        System.out.println("Failed to insert savings for userEmail=" + userEmail);
                     }
                 }
             }
@@ -289,12 +333,12 @@ public class DatabaseHandler {
 
     /**
      * Update the savings deduction percentage for a user.
-     * Here, 'percentage' stored in 'amount' column.
      */
     public void updateSavings(String userEmail, double percentage) {
-        String updateSql = "UPDATE savings SET amount = ? WHERE user_email = ?";
+        String updateSql = "UPDATE savings SET percentage = ? WHERE user_email = ?";
 
-        try (PreparedStatement pstmt = getConnection().prepareStatement(updateSql)) {
+        try (ConnectionManager.Lease lease = connections.writer()) {
+            PreparedStatement pstmt = lease.prepare(updateSql);
             pstmt.setDouble(1, percentage);
             pstmt.setString(2, userEmail);
             int affected = pstmt.executeUpdate();
@@ -309,87 +353,147 @@ public class DatabaseHandler {
         }
     }
 
-    public void runMonthlySavingsTransfer() {
-        String selectActiveSql = "SELECT user_email, amount FROM savings";
-        String getDebitBalanceSql = "SELECT balance FROM transactions WHERE user_email = ? AND type = 'debit'";
-        String updateDebitSql = "UPDATE transactions SET balance = balance - ? WHERE user_email = ? AND type = 'debit'";
-        String updateSavingsSql = "UPDATE transactions SET balance = balance + ? WHERE user_email = ? AND type = 'savings'";
-        String insertSavingsSql = "INSERT INTO transactions (user_email, type, balance) VALUES (?, 'savings', ?)";
-
-        try (PreparedStatement selectStmt = getConnection().prepareStatement(selectActiveSql);
-             ResultSet rs = selectStmt.executeQuery()) {
-
-            while (rs.next()) {
-                String userEmail = rs.getString("user_email");
-                double deductionPercent = rs.getDouble("amount");
-
-                try (PreparedStatement debitStmt = getConnection().prepareStatement(getDebitBalanceSql)) {
-                    debitStmt.setString(1, userEmail);
-                    try (ResultSet debitRs = debitStmt.executeQuery()) {
-                        if (debitRs.next()) {
-                            double debitBalance = debitRs.getDouble("balance");
-                            double deductionAmount = debitBalance * (deductionPercent / 100.0);
-
-                            if (deductionAmount > 0 && debitBalance >= deductionAmount) {
-                                try {
-                                    conn.setAutoCommit(false);
-
-                                    try (PreparedStatement updateDebitStmt = getConnection().prepareStatement(updateDebitSql)) {
-                                        updateDebitStmt.setDouble(1, deductionAmount);
-                                        updateDebitStmt.setString(2, userEmail);
-                                        updateDebitStmt.executeUpdate();
-                                    }
-
-                                    try (PreparedStatement updateSavingsStmt = getConnection().prepareStatement(updateSavingsSql)) {
-                                        updateSavingsStmt.setDouble(1, deductionAmount);
-                                        updateSavingsStmt.setString(2, userEmail);
-                                        int affectedRows = updateSavingsStmt.executeUpdate();
-
-                                        if (affectedRows == 0) {
-                                            try (PreparedStatement insertSavingsStmt = getConnection().prepareStatement(insertSavingsSql)) {
-                                                insertSavingsStmt.setString(1, userEmail);
-                                                insertSavingsStmt.setDouble(2, deductionAmount);
-                                                insertSavingsStmt.executeUpdate();
-                                            }
-                                        }
-                                    }
-
-                                    conn.commit();
-                                    System.out.println("Monthly transfer completed for userEmail=" + userEmail + ", amount=" + deductionAmount);
-                                } catch (SQLException e) {
-                                    conn.rollback();
-                                    System.out.println("Transaction rolled back for userEmail=" + userEmail + ": " + e.getMessage());
-                                    e.printStackTrace();
-                                } finally {
-                                    conn.setAutoCommit(true);
-                                }
-                            } else {
-                                System.out.println("Insufficient funds or zero deduction for userEmail=" + userEmail);
-                            }
-                        } else {
-                            System.out.println("No debit account found for userEmail=" + userEmail);
-                        }
-                    }
-                } catch (SQLException e) {
-                    System.out.println("Error processing debit account for userEmail=" + userEmail + ": " + e.getMessage());
-                    e.printStackTrace();
-                }
+    /**
+     * The user's saved balance in cents.
+     */
+    public long getSavings(String userEmail) {
+        String sql = "SELECT balance FROM savings WHERE user_email = ?";
+        try (ConnectionManager.Lease lease = connections.reader()) {
+            PreparedStatement pstmt = lease.prepare(sql);
+            pstmt.setString(1, userEmail);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getLong("balance") : 0;
             }
+        } catch (SQLException e) {
+            System.out.println("Error reading savings for userEmail=" + userEmail + ": " + e.getMessage());
+            return 0;
+        }
+    }
 
+    /**
+     * Runs this month's savings transfer, or resumes it if an earlier run
+     * was interrupted. See {@link MonthlySavingsJob}.
+     */
+    public void runMonthlySavingsTransfer() {
+        try {
+            SavingsTransferReport report = new MonthlySavingsJob(connections, SAVINGS_CHUNK_SIZE).run(YearMonth.now());
+            System.out.println(report);
         } catch (SQLException e) {
             System.out.println("Error running monthly savings transfer: " + e.getMessage());
             e.printStackTrace();
         }
     }
 
+    // ====== DEPOSIT PROJECTIONS ======
+
+    /**
+     * The deposit rate table, from the file named by ledger.deposits.rateFile
+     * if set, otherwise from the deposit_rates table.
+     */
+    static DepositProjector depositProjector() throws SQLException, IOException {
+        String file = System.getProperty("ledger.deposits.rateFile");
+        return file != null ? DepositProjector.fromFile(Path.of(file)) : DepositProjector.fromDatabase(connections);
+    }
+
+    static void showDepositProjection(long deposit, int months) {
+        try {
+            List<DepositProjector.Projection> ranked = depositProjector().compare(deposit, months);
+            if (ranked.isEmpty()) {
+                System.out.println("No deposit product accepts $" + Money.format(deposit) + ".");
+                return;
+            }
+            System.out.println("Projected interest on $" + Money.format(deposit) + " over " + months + " month(s):");
+            int rank = 1;
+            for (DepositProjector.Projection p : ranked) {
+                System.out.printf("%d. %-20s %5.2f%%  interest $%s  balance $%s%n", rank++, p.bank(),
+                        p.annualPercent(), Money.format(p.interest()), Money.format(p.balance()));
+            }
+        } catch (SQLException | IOException e) {
+            System.out.println("Error loading deposit rates: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    // ====== SCHEDULED JOBS ======
+
+    /**
+     * Starts the background jobs: the monthly savings transfer, savings
+     * interest (only when ledger.savings.annualInterestRate is set), the
+     * daily loan reminder sweep, the monthly journal balance snapshots, the
+     * description backfill every few minutes and the nightly best product
+     * report (only when ledger.reports.bestProductFile is set). See {@link JobScheduler}.
+     */
+    public static synchronized void startMonthlySavingsScheduler() {
+        if (scheduler != null) {
+            return;
+        }
+        JobScheduler jobs = new JobScheduler(connections, Clock.systemDefaultZone(), 3)
+                .register("monthly-savings", Schedule.monthly(1, LocalTime.of(0, 5)), context -> {
+                    SavingsTransferReport report = new MonthlySavingsJob(connections, SAVINGS_CHUNK_SIZE)
+                            .run(YearMonth.from(context.slot()), context::stopRequested);
+                    System.out.println(report);
+                })
+                .register("loan-reminders", Schedule.daily(LocalTime.of(8, 0)), reminderEngine())
+                .register("journal-snapshots", Schedule.monthly(1, LocalTime.of(0, 30)),
+                        new JournalSnapshotJob(connections, SAVINGS_CHUNK_SIZE))
+                .register("description-backfill", Schedule.everyMinutes(DESCRIPTION_BACKFILL_MINUTES),
+                        new DescriptionBackfillJob(connections, DESCRIPTION_BACKFILL_CHUNK_SIZE));
+        String bestProductFile = System.getProperty("ledger.reports.bestProductFile");
+        if (bestProductFile != null) {
+            jobs.register("best-product-report", Schedule.daily(LocalTime.of(2, 0)), new BestProductReportJob(
+                    connections, DatabaseHandler::depositProjector, PROJECTION_MONTHS, Path.of(bestProductFile)));
+        }
+        if (SAVINGS_ANNUAL_RATE > 0) {
+            jobs.register("savings-interest", Schedule.monthly(1, LocalTime.of(0, 15)),
+                    new SavingsInterestJob(connections, SAVINGS_ANNUAL_RATE, SAVINGS_CHUNK_SIZE));
+        }
+
+        try {
+            // The daily sweep may already have run before a restart, so fill the mailbox now
+            new LoanReminderEngine(connections, REMINDER_WINDOW_DAYS, REMINDER_BATCH_SIZE, List.of(reminderMailbox))
+                    .sweep(LocalDate.now());
+            jobs.start(Duration.ofMinutes(1));
+            scheduler = jobs;
+        } catch (SQLException | IOException e) {
+            System.out.println("Error starting scheduler: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    private static LoanReminderEngine reminderEngine() {
+        List<ReminderSink> sinks = new ArrayList<>(List.of(ReminderSink.console(), reminderMailbox));
+        String file = System.getProperty("ledger.reminders.file");
+        if (file != null) {
+            sinks.add(new FileReminderSink(Path.of(file)));
+        }
+        return new LoanReminderEngine(connections, REMINDER_WINDOW_DAYS, REMINDER_BATCH_SIZE, sinks);
+    }
+
+    /**
+     * Lets a running job finish (or reach its next checkpoint) before
+     * returning, then prints per-job stats.
+     */
+    public static synchronized void shutdownScheduler() {
+        blocklist.close();
+        if (scheduler == null) {
+            return;
+        }
+        try {
+            if (!scheduler.shutdown(Duration.ofSeconds(30))) {
+                System.out.println("Scheduler did not drain in time, the running job will resume on next start.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        scheduler.stats().forEach((job, stats) -> System.out.println("Job " + job + ": " + stats));
+        scheduler = null;
+    }
+
     // ====== LOAN FUNCTIONALITY ======
 
     public int getUserId(String email) {
-        String sql = "SELECT id FROM users WHERE email = ?";
-        try (PreparedStatement pstmt = getConnection().prepareStatement(sql)) {
-            pstmt.setString(1, email);
-            ResultSet rs = pstmt.executeQuery();
-            return rs.next() ? rs.getInt("id") : -1;
+        try {
+            return users.get(email).map(UserIdentity::id).orElse(-1);
         } catch (SQLException e) {
             e.printStackTrace();
             return -1;
@@ -397,114 +501,151 @@ public class DatabaseHandler {
     }
 
     public void applyLoan(Scanner scanner, int userId) {
-        System.out.print("Enter principal amount: ");
-        double principal = scanner.nextDouble();
-
-        System.out.print("Enter interest rate (e.g. 0.05 for 5%): ");
-        double interestRate = scanner.nextDouble();
-
-        System.out.print("Enter repayment period in months: ");
-        int period = scanner.nextInt();
-
-        double totalRepayment = principal * (1 + interestRate);
-        Timestamp createdAt = new Timestamp(System.currentTimeMillis());
-
-        String sql = "INSERT INTO loans (user_id, principal_amount, interest_rate, repayment_period, " +
-                "outstanding_balance, status, created_at) " +
-                "VALUES (?, ?, ?, ?, ?, 'active', ?)";
-
-        try (PreparedStatement pstmt = getConnection().prepareStatement(sql)) {
-            pstmt.setInt(1, userId);
-            pstmt.setDouble(2, principal);
-            pstmt.setDouble(3, interestRate);
-            pstmt.setInt(4, period);
-            pstmt.setDouble(5, totalRepayment);
-            pstmt.setTimestamp(6, createdAt);
-            pstmt.executeUpdate();
-            System.out.println("Loan applied successfully. Total repayment: $" + totalRepayment);
+        long principal = ask(scanner, "Enter principal amount: ", Money::parseCents,
+                p -> p > 0, "Principal must be positive.");
+        double interestRate = ask(scanner, "Enter annual interest rate (e.g. 0.05 for 5%): ", Double::parseDouble,
+                r -> r >= 0 && Double.isFinite(r), "Interest rate cannot be negative.");
+        int period = ask(scanner, "Enter repayment period in months: ", Integer::parseInt,
+                n -> n >= 1, "Repayment period must be at least one month.");
+
+        System.out.print("Repayment method (1. Annuity, 2. Reducing balance, 3. Flat): ");
+        AmortizationMethod method = switch (scanner.nextLine().trim()) {
+            case "2" -> AmortizationMethod.REDUCING_BALANCE;
+            case "3" -> AmortizationMethod.FLAT;
+            default -> AmortizationMethod.ANNUITY;
+        };
+
+        List<Installment> schedule = Amortization.schedule(method, principal, interestRate, period, LocalDate.now());
+        long totalRepayment = 0;
+        for (Installment installment : schedule) {
+            totalRepayment += installment.amount();
+        }
+
+        try {
+            loans.create(userId, principal, interestRate, method, schedule);
+            blocklist.refreshUser(userId);
+            System.out.println("Loan applied successfully. First installment: $" + Money.format(schedule.get(0).amount())
+                    + " due " + schedule.get(0).dueDate() + ", total repayment: $" + Money.format(totalRepayment)
+                    + ", final due " + schedule.get(schedule.size() - 1).dueDate());
         } catch (SQLException e) {
             e.printStackTrace();
         }
     }
 
-    public void repayLoan(Scanner scanner, int userId) {
-        String sql = "SELECT * FROM loans WHERE user_id = ? AND status = 'active' AND outstanding_balance > 0";
-
-        try (PreparedStatement stmt = getConnection().prepareStatement(sql)) {
-            stmt.setInt(1, userId);
-            ResultSet rs = stmt.executeQuery();
+    // Prompts until a line parses and passes the check
+    private static <T> T ask(Scanner scanner, String prompt, Function<String, T> parse, Predicate<T> valid,
+                             String rule) {
+        while (true) {
+            System.out.print(prompt);
+            try {
+                T value = parse.apply(scanner.nextLine().trim());
+                if (valid.test(value)) {
+                    return value;
+                }
+                System.out.println(rule);
+            } catch (NumberFormatException | ArithmeticException e) {
+                System.out.println("Invalid input.");
+            }
+        }
+    }
 
-            if (!rs.next()) {
+    public void repayLoan(Scanner scanner, String email) {
+        try {
+            long owed = getLoanBalance(email);
+            if (owed <= 0) {
                 System.out.println("No active loan to repay.");
                 return;
             }
-
-            int loanId = rs.getInt("id");
-            double balance = rs.getDouble("outstanding_balance");
-            int months = rs.getInt("repayment_period");
-            double monthlyRepayment = balance / months;
-
-            conn.setAutoCommit(false);
-            try {
-                // Insert a debit transaction for repayment
-                String insertTransaction = "INSERT INTO transactions (type, amount, description, user_email) " +
-                        "VALUES ('debit', ?, 'Loan repayment', (SELECT email FROM users WHERE id = ?))";
-                try (PreparedStatement txnStmt = conn.prepareStatement(insertTransaction)) {
-                    txnStmt.setDouble(1, monthlyRepayment);
-                    txnStmt.setInt(2, userId);
-                    txnStmt.executeUpdate();
-                }
-
-                // Update loan balance and possibly status
-                double newBalance = balance - monthlyRepayment;
-                String updateLoan = "UPDATE loans SET outstanding_balance = ?, status = ? WHERE id = ?";
-                try (PreparedStatement updLoan = conn.prepareStatement(updateLoan)) {
-                    updLoan.setDouble(1, newBalance);
-                    updLoan.setString(2, (newBalance <= 0.01) ? "repaid" : "active");
-                    updLoan.setInt(3, loanId);
-                    updLoan.executeUpdate();
-                }
-
-                conn.commit();
-                System.out.println("Repayment of $" + monthlyRepayment + " successful.");
-            } catch (SQLException e) {
-                try {
-                    conn.rollback();
-                } catch (SQLException ex) {
-                    ex.printStackTrace();
-                }
-                System.out.println("Error during repayment.");
-            } finally {
-                try {
-                    conn.setAutoCommit(true);
-                } catch (SQLException ex) {
-                    ex.printStackTrace();
-                }
+            System.out.println("Due this month: $" + Money.format(repayments.due(email))
+                    + ", total outstanding: $" + Money.format(owed));
+
+            System.out.print("Enter amount to repay: ");
+            long amount = Money.parseCents(scanner.next());
+            System.out.print("Apply to (1. Oldest loan first, 2. Highest rate first, 3. All loans pro-rata): ");
+            AllocationPolicy policy = switch (scanner.nextInt()) {
+                case 2 -> AllocationPolicy.HIGHEST_RATE_FIRST;
+                case 3 -> AllocationPolicy.PRO_RATA;
+                default -> AllocationPolicy.OLDEST_FIRST;
+            };
+            scanner.nextLine();
+
+            if (amount <= 0) {
+                System.out.println("Repayment amount must be positive.");
+                return;
+            }
+            RepaymentProcessor.Result result = repayments.repay(email, amount, policy);
+            blocklist.refreshUser(getUserId(email));
+            long overpaid = amount - result.applied() - result.declined();
+            if (result.applied() > 0) {
+                System.out.println("Repayment of $" + Money.format(result.applied()) + " successful."
+                        + (overpaid > 0 ? " $" + Money.format(overpaid) + " was more than you owed and was not taken." : ""));
+            }
+            if (result.status() == LedgerService.Status.INSUFFICIENT_FUNDS) {
+                System.out.println("Insufficient funds: $" + Money.format(result.declined())
+                        + " of the repayment was not taken. Balance: $" + Money.format(getBalance(email)));
             }
-
         } catch (SQLException e) {
+            System.out.println("Error during repayment.");
             e.printStackTrace();
         }
     }
 
-    public boolean isBlocked(int userId) {
-        String sql = "SELECT * FROM loans WHERE user_id = ? AND status = 'active' AND outstanding_balance > 0 AND created_at <= date('now', '-repayment_period months')";
-        try (PreparedStatement stmt = getConnection().prepareStatement(sql)) {
-            stmt.setInt(1, userId);
-            ResultSet rs = stmt.executeQuery();
-            return rs.next();
-        } catch (SQLException e) {
+    /**
+     * Applies a payroll deduction file (email,amount per row) in batched
+     * transactions and refreshes the overdue-loan blocks afterwards.
+     */
+    static void importPayrollRepayments(Path inputFile, AllocationPolicy policy) {
+        try {
+            RepaymentReport report = repayments.processFile(inputFile, policy);
+            blocklist.refresh();
+
+            System.out.println(report);
+            report.rejected().stream().limit(10).forEach(r ->
+                    System.out.println("  Rejected line " + r.line() + " (" + r.reason() + "): " + r.content()));
+        } catch (Exception e) {
+            System.out.println("Error processing repayment file: " + e.getMessage());
             e.printStackTrace();
-            return false;
         }
     }
 
+    /**
+     * Total still owed on the user's active loans, in cents.
+     */
+    public long getLoanBalance(String email) {
+        try {
+            int userId = getUserId(email);
+            return userId < 0 ? 0 : loans.outstanding(userId);
+        } catch (SQLException e) {
+            System.out.println("Error reading loan balance: " + e.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * True if the user has an overdue loan. An in-memory lookup, see {@link LoanBlocklist}.
+     */
+    public boolean isBlocked(int userId) {
+        return blocklist.isBlocked(userId);
+    }
+
+    /**
+     * Drains and closes the capture log and the group-commit writer, then
+     * closes the connections. Only for process exit: nothing reopens the
+     * capture log or the writer afterwards.
+     */
     public static void disconnectDatabase() throws SQLException {
-        if (conn != null && !conn.isClosed()) {
-            conn.close();
-            conn = null;
-            System.out.println("Database connection closed.");
+        if (capture != null) {
+            capture.close();
+            System.out.println("Capture log closed: " + capture.stats());
+        }
+        if (groupCommit != null) {
+            groupCommit.close();
+            System.out.println("Group commit writer closed: " + groupCommit.rowCount() + " rows in "
+                    + groupCommit.commitCount() + " commits");
         }
+        connections.close();
+        System.out.println("Database connection closed. Statement cache: " + connections.statementCacheStats()
+                + ". User cache: " + users.stats());
     }
 
 }
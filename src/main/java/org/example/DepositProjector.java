@@ -0,0 +1,195 @@
+package org.example;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Projects compound interest on deposits for every product in a rate table.
+ *
+ * Interest is compounded monthly at the annual rate / 12. The growth factor
+ * for a product and a term is worked out once, so projecting a deposit is a
+ * single multiply, rounded half-even to the cent. Products are held as
+ * parallel arrays sorted by rate, and the batch methods run one flat loop
+ * per product over the deposit array, split across cores for large batches.
+ */
+public class DepositProjector {
+    static final String RATES_SQL = "SELECT bank, min_deposit, annual_rate FROM deposit_rates";
+    // Deposits per parallel task; below this a batch runs on the calling thread
+    private static final int CHUNK = 1 << 14;
+
+    /** One product's outcome for one deposit. */
+    public record Projection(String bank, double annualPercent, long interest, long balance) {
+    }
+
+    private final String[] banks;
+    private final long[] minDeposit;
+    private final double[] annualPercent;
+
+    /**
+     * Products are ranked by rate, lowest first; products with the same rate
+     * keep their order in rates.
+     */
+    public DepositProjector(List<DepositRate> rates) {
+        List<DepositRate> sorted = new ArrayList<>(rates);
+        sorted.sort(Comparator.comparingDouble(DepositRate::annualPercent));
+        int n = sorted.size();
+        banks = new String[n];
+        minDeposit = new long[n];
+        annualPercent = new double[n];
+        for (int i = 0; i < n; i++) {
+            banks[i] = sorted.get(i).bank();
+            minDeposit[i] = sorted.get(i).minDeposit();
+            annualPercent[i] = sorted.get(i).annualPercent();
+        }
+    }
+
+    public static DepositProjector fromDatabase(ConnectionManager connections) throws SQLException {
+        List<DepositRate> rates = new ArrayList<>();
+        try (ConnectionManager.Lease lease = connections.reader()) {
+            PreparedStatement ps = lease.prepare(RATES_SQL);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    rates.add(new DepositRate(rs.getString(1), rs.getLong(2), rs.getDouble(3)));
+                }
+            }
+        }
+        return new DepositProjector(rates);
+    }
+
+    /**
+     * Reads a rate file with one "bank,annual rate %[,minimum deposit]" row
+     * per product and an optional "Bank," header.
+     */
+    public static DepositProjector fromFile(Path file) throws IOException {
+        List<DepositRate> rates = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file)) {
+            String line;
+            int lineNo = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNo++;
+                if (line.isBlank() || (lineNo == 1 && line.regionMatches(true, 0, "Bank,", 0, 5))) {
+                    continue;
+                }
+                List<String> fields = TransactionImporter.parseCsvLine(line);
+                if (fields == null || fields.size() < 2 || fields.size() > 3) {
+                    throw new IOException("Line " + lineNo + " of " + file + ": expected bank,rate[,minimum deposit]");
+                }
+                try {
+                    long min = fields.size() == 3 ? Money.parseCents(fields.get(2)) : 0;
+                    rates.add(new DepositRate(fields.get(0).trim(), min, Double.parseDouble(fields.get(1).trim())));
+                } catch (NumberFormatException | ArithmeticException e) {
+                    throw new IOException("Line " + lineNo + " of " + file + ": " + e.getMessage());
+                }
+            }
+        }
+        return new DepositProjector(rates);
+    }
+
+    public int products() {
+        return banks.length;
+    }
+
+    public String bank(int product) {
+        return banks[product];
+    }
+
+    public double annualPercent(int product) {
+        return annualPercent[product];
+    }
+
+    /**
+     * Every product the deposit qualifies for, best first.
+     */
+    public List<Projection> compare(long deposit, int months) {
+        double[] growth = growth(months);
+        List<Projection> ranked = new ArrayList<>();
+        for (int p = banks.length - 1; p >= 0; p--) {
+            if (deposit >= minDeposit[p]) {
+                long interest = Money.multiply(deposit, growth[p]);
+                ranked.add(new Projection(banks[p], annualPercent[p], interest, deposit + interest));
+            }
+        }
+        return ranked;
+    }
+
+    /**
+     * Interest for every deposit under every product, product-major: the
+     * interest on deposits[j] under product p is at out[p * deposits.length + j],
+     * or -1 if the deposit is below that product's minimum.
+     */
+    public void project(long[] deposits, int months, long[] out) {
+        int n = deposits.length;
+        if (out.length < (long) n * banks.length) {
+            throw new IllegalArgumentException("out needs room for " + (long) n * banks.length + " projections");
+        }
+        double[] growth = growth(months);
+        chunks(n).forEach(c -> {
+            int from = c * CHUNK;
+            int to = Math.min(n, from + CHUNK);
+            for (int p = 0; p < banks.length; p++) {
+                double g = growth[p];
+                long min = minDeposit[p];
+                int base = p * n;
+                for (int j = from; j < to; j++) {
+                    long d = deposits[j];
+                    out[base + j] = d >= min ? (long) Math.rint(d * g) : -1;
+                }
+            }
+        });
+    }
+
+    /**
+     * The best product for every deposit: its index, or -1 if the deposit
+     * qualifies for none, and the interest it would earn.
+     */
+    public void best(long[] deposits, int months, int[] bestProduct, long[] bestInterest) {
+        int n = deposits.length;
+        double[] growth = growth(months);
+        chunks(n).forEach(c -> {
+            int from = c * CHUNK;
+            int to = Math.min(n, from + CHUNK);
+            for (int j = from; j < to; j++) {
+                bestProduct[j] = -1;
+                bestInterest[j] = 0;
+            }
+            // Products go from lowest to highest rate, so the last one a deposit qualifies for wins
+            for (int p = 0; p < banks.length; p++) {
+                double g = growth[p];
+                long min = minDeposit[p];
+                for (int j = from; j < to; j++) {
+                    long d = deposits[j];
+                    if (d >= min) {
+                        bestProduct[j] = p;
+                        bestInterest[j] = (long) Math.rint(d * g);
+                    }
+                }
+            }
+        });
+    }
+
+    // (1 + r/12)^months - 1 per product
+    private double[] growth(int months) {
+        if (months < 1) {
+            throw new IllegalArgumentException("Projection needs at least one month");
+        }
+        double[] growth = new double[banks.length];
+        for (int p = 0; p < banks.length; p++) {
+            growth[p] = Math.expm1(months * Math.log1p(annualPercent[p] / 1200));
+        }
+        return growth;
+    }
+
+    private static IntStream chunks(int n) {
+        IntStream chunks = IntStream.range(0, (n + CHUNK - 1) / CHUNK);
+        return n > CHUNK ? chunks.parallel() : chunks;
+    }
+}
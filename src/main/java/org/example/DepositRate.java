@@ -0,0 +1,8 @@
+package org.example;
+
+/**
+ * One deposit product: a bank's annual rate, in percent, for deposits of at
+ * least minDeposit cents.
+ */
+public record DepositRate(String bank, long minDeposit, double annualPercent) {
+}
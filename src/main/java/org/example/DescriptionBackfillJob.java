@@ -0,0 +1,201 @@
+package org.example;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Tags transactions that went in without a description id: all of history
+ * on the first run, then rows from writers that do not add their new
+ * descriptions first (see {@link TransactionBatchWriter#intern}). New
+ * descriptions are added to the dictionary with the category
+ * {@link KeywordCategorizer} finds for them.
+ *
+ * Rows are read in id order, chunkSize at a time, from the partial index
+ * of untagged rows. While one chunk is written on the writer connection,
+ * the next is read on a reader and its new descriptions are categorized in
+ * parallel, so the writer only ever does the writing. Each chunk's last id
+ * is saved through {@link ScheduledJob.Context#advance} in the same
+ * transaction as its updates.
+ */
+public class DescriptionBackfillJob implements ScheduledJob {
+    static final String UNTAGGED_SQL =
+            "SELECT id, description FROM transactions WHERE description_id IS NULL AND id > ? ORDER BY id LIMIT ?";
+    static final String INTERN_SQL = "INSERT OR IGNORE INTO descriptions (text, category_id) VALUES (?, ?)";
+    static final String LOOKUP_SQL = "SELECT id, category_id FROM descriptions WHERE text = ?";
+    private static final String TAG_SQL = "UPDATE transactions SET description_id = ?, category_id = ? WHERE id = ?";
+    // Descriptions remembered between chunks; beyond this the dictionary is asked again
+    private static final int CACHE_LIMIT = 100_000;
+
+    // Untagged rows and the categories of the descriptions not seen before them
+    private record Chunk(long[] ids, String[] texts, Map<String, Integer> categories) {
+        long lastId() {
+            return ids[ids.length - 1];
+        }
+    }
+
+    // Dictionary id and category (0 for none) of a description
+    private record Entry(long id, int categoryId) {
+    }
+
+    private final ConnectionManager connections;
+    private final int chunkSize;
+
+    public DescriptionBackfillJob(ConnectionManager connections, int chunkSize) {
+        this.connections = connections;
+        this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public void run(Context context) throws SQLException {
+        long start = System.nanoTime();
+        KeywordCategorizer categorizer = KeywordCategorizer.fromDatabase(connections);
+        Map<String, Entry> known = new ConcurrentHashMap<>();
+        long tagged = 0;
+        long created = 0;
+
+        CompletableFuture<Chunk> next = read(context.checkpoint(), categorizer, known);
+        while (!context.stopRequested()) {
+            Chunk chunk = join(next);
+            if (chunk.ids().length == 0) {
+                break;
+            }
+            next = read(chunk.lastId(), categorizer, known);
+            created += write(context, chunk, categorizer, known);
+            tagged += chunk.ids().length;
+        }
+
+        if (tagged > 0) {
+            System.out.println("Description backfill: " + tagged + " transactions tagged, " + created
+                    + " new descriptions, in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+        }
+    }
+
+    // Reads the chunk after afterId and categorizes its new descriptions, off the calling thread
+    private CompletableFuture<Chunk> read(long afterId, KeywordCategorizer categorizer, Map<String, Entry> known) {
+        return CompletableFuture.supplyAsync(() -> {
+            long[] ids = new long[chunkSize];
+            String[] texts = new String[chunkSize];
+            int n = 0;
+            try (ConnectionManager.Lease lease = connections.reader()) {
+                PreparedStatement ps = lease.prepare(UNTAGGED_SQL);
+                ps.setLong(1, afterId);
+                ps.setInt(2, chunkSize);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        ids[n] = rs.getLong(1);
+                        texts[n] = rs.getString(2);
+                        n++;
+                    }
+                }
+            } catch (SQLException e) {
+                throw new CompletionException(e);
+            }
+
+            Set<String> unseen = new HashSet<>();
+            for (int i = 0; i < n; i++) {
+                if (!known.containsKey(texts[i])) {
+                    unseen.add(texts[i]);
+                }
+            }
+            Map<String, Integer> categories = unseen.parallelStream()
+                    .collect(Collectors.toConcurrentMap(t -> t, categorizer::categorize));
+            return new Chunk(Arrays.copyOf(ids, n), Arrays.copyOf(texts, n), categories);
+        });
+    }
+
+    // Tags the chunk's rows in one transaction; returns how many descriptions were added
+    private int write(Context context, Chunk chunk, KeywordCategorizer categorizer, Map<String, Entry> known)
+            throws SQLException {
+        if (known.size() > CACHE_LIMIT) {
+            known.clear();
+        }
+        // Kept apart until the commit, so a rollback never leaves ids in the cache that are not in the table
+        Map<String, Entry> resolved = new HashMap<>();
+        int created = 0;
+        try (ConnectionManager.Lease lease = connections.writer()) {
+            Connection conn = lease.connection();
+            PreparedStatement tag = lease.prepare(TAG_SQL);
+            conn.setAutoCommit(false);
+            try {
+                for (int i = 0; i < chunk.ids().length; i++) {
+                    String text = chunk.texts()[i];
+                    Entry entry = known.get(text);
+                    if (entry == null) {
+                        entry = resolved.get(text);
+                    }
+                    if (entry == null) {
+                        entry = lookup(lease, text);
+                        if (entry == null) {
+                            Integer category = chunk.categories().get(text);
+                            entry = intern(lease, text, category != null ? category : categorizer.categorize(text));
+                            created++;
+                        }
+                        resolved.put(text, entry);
+                    }
+                    tag.setLong(1, entry.id());
+                    if (entry.categoryId() == KeywordCategorizer.UNCATEGORIZED) {
+                        tag.setNull(2, Types.INTEGER);
+                    } else {
+                        tag.setInt(2, entry.categoryId());
+                    }
+                    tag.setLong(3, chunk.ids()[i]);
+                    tag.addBatch();
+                }
+                tag.executeBatch();
+                context.advance(lease, chunk.lastId());
+                conn.commit();
+            } catch (SQLException e) {
+                tag.clearBatch();
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+        known.putAll(resolved);
+        return created;
+    }
+
+    private static Entry lookup(ConnectionManager.Lease lease, String text) throws SQLException {
+        PreparedStatement ps = lease.prepare(LOOKUP_SQL);
+        ps.setString(1, text);
+        try (ResultSet rs = ps.executeQuery()) {
+            return rs.next() ? new Entry(rs.getLong(1), rs.getInt(2)) : null;
+        }
+    }
+
+    private static Entry intern(ConnectionManager.Lease lease, String text, int categoryId) throws SQLException {
+        PreparedStatement ps = lease.prepare(INTERN_SQL);
+        ps.setString(1, text);
+        if (categoryId == KeywordCategorizer.UNCATEGORIZED) {
+            ps.setNull(2, Types.INTEGER);
+        } else {
+            ps.setInt(2, categoryId);
+        }
+        ps.executeUpdate();
+        return lookup(lease, text);
+    }
+
+    private static Chunk join(CompletableFuture<Chunk> future) throws SQLException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof SQLException sql) {
+                throw sql;
+            }
+            throw e;
+        }
+    }
+}
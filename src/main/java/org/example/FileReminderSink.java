@@ -0,0 +1,76 @@
+package org.example;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Writes each sweep's reminders to a tab-separated file of its own, one
+ * line each, for a mailer or another process to pick up: with file
+ * reminders.tsv, the sweep for 2026-10-17 writes reminders-2026-10-17.tsv.
+ *
+ * Lines go to a temporary file that is renamed into place when the sweep
+ * ends, so a reminders file only ever holds a whole sweep. A failed sweep
+ * leaves nothing behind, and running a day's sweep again replaces that
+ * day's file instead of adding to it.
+ */
+public class FileReminderSink implements ReminderSink {
+    private final Path file;
+    private BufferedWriter out;
+    private Path target;
+    private Path partial;
+
+    public FileReminderSink(Path file) {
+        this.file = file;
+    }
+
+    /** The file the sweep for the given day goes to. */
+    public Path fileFor(LocalDate day) {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String base = dot > 0 ? name.substring(0, dot) : name;
+        String extension = dot > 0 ? name.substring(dot) : "";
+        return file.resolveSibling(base + "-" + day + extension);
+    }
+
+    @Override
+    public void begin(LocalDate today) throws IOException {
+        target = fileFor(today);
+        partial = target.resolveSibling(target.getFileName() + ".partial");
+        out = Files.newBufferedWriter(partial, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+    }
+
+    @Override
+    public void send(List<LoanReminder> batch) throws IOException {
+        for (LoanReminder reminder : batch) {
+            out.write(reminder.loanId() + "\t" + reminder.email() + "\t" + reminder.dueDate()
+                    + "\t" + reminder.daysLeft() + "\t" + Money.format(reminder.amount()));
+            out.newLine();
+        }
+    }
+
+    @Override
+    public void end() throws IOException {
+        out.close();
+        out = null;
+        Files.move(partial, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Override
+    public void abort() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+        if (partial != null) {
+            Files.deleteIfExists(partial);
+        }
+    }
+}
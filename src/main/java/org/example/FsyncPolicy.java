@@ -0,0 +1,69 @@
+package org.example;
+
+/**
+ * When the capture log forces appended records to disk. Until a record is
+ * forced, a power loss (not a process crash: the page cache survives that)
+ * can lose it after it was acknowledged.
+ *
+ * @param mode  what n counts
+ * @param n     records per force for {@link Mode#RECORDS}, milliseconds
+ *              between forces for {@link Mode#MILLIS}; ignored for
+ *              {@link Mode#EVERY_RECORD}
+ */
+public record FsyncPolicy(Mode mode, long n) {
+
+    public enum Mode {
+        /** Every append is on disk before it is acknowledged. */
+        EVERY_RECORD,
+        /** Every nth append forces everything since the last force. */
+        RECORDS,
+        /** A background thread forces the log every n milliseconds. */
+        MILLIS
+    }
+
+    public FsyncPolicy {
+        if (mode != Mode.EVERY_RECORD && n < 1) {
+            throw new IllegalArgumentException(mode + " fsync policy needs a count of at least 1");
+        }
+    }
+
+    public static FsyncPolicy everyRecord() {
+        return new FsyncPolicy(Mode.EVERY_RECORD, 1);
+    }
+
+    public static FsyncPolicy everyRecords(int records) {
+        return new FsyncPolicy(Mode.RECORDS, records);
+    }
+
+    public static FsyncPolicy everyMillis(long millis) {
+        return new FsyncPolicy(Mode.MILLIS, millis);
+    }
+
+    /**
+     * Parses "record", "records:N" or "millis:N".
+     */
+    public static FsyncPolicy parse(String value) {
+        String v = value.trim().toLowerCase();
+        if (v.equals("record")) {
+            return everyRecord();
+        }
+        int colon = v.indexOf(':');
+        try {
+            if (colon > 0) {
+                long n = Long.parseLong(v.substring(colon + 1).trim());
+                switch (v.substring(0, colon).trim()) {
+                    case "records":
+                        return new FsyncPolicy(Mode.RECORDS, n);
+                    case "millis":
+                        return new FsyncPolicy(Mode.MILLIS, n);
+                    default:
+                        break;
+                }
+            }
+        } catch (NumberFormatException e) {
+            // fall through to the error below
+        }
+        throw new IllegalArgumentException("Unknown fsync policy '" + value
+                + "', expected record, records:N or millis:N");
+    }
+}
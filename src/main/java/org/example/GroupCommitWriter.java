@@ -0,0 +1,190 @@
+package org.example;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Coalesces single-row inserts from many threads into one commit.
+ * Callers submit a transaction and wait on the returned future, which
+ * completes once the row is committed. A background thread takes the first
+ * waiting row, collects whatever else arrives within the window (up to
+ * maxBatch rows) and writes them all in one SQL transaction.
+ *
+ * Debits submitted with {@link #submitDebit} are only written if the
+ * balance covers them at that point in the batch; their future says
+ * whether the row went in.
+ *
+ * Every future completes: callers wait on them holding account locks. A
+ * batch that fails, for whatever reason, fails all of its futures, and
+ * rows submitted once the writer has closed or its thread has stopped
+ * fail straight away.
+ */
+public class GroupCommitWriter implements AutoCloseable {
+    private record Pending(Transaction transaction, boolean checkBalance, CompletableFuture<Boolean> done) {
+    }
+
+    private final ConnectionManager connections;
+    private final long windowNanos;
+    private final int maxBatch;
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final Thread committer;
+    private volatile boolean running = true;
+
+    private final LongAdder commits = new LongAdder();
+    private final LongAdder rows = new LongAdder();
+
+    public GroupCommitWriter(ConnectionManager connections, long windowMicros, int maxBatch) {
+        this.connections = connections;
+        this.windowNanos = TimeUnit.MICROSECONDS.toNanos(windowMicros);
+        this.maxBatch = maxBatch;
+        this.committer = new Thread(this::run, "group-commit");
+        this.committer.setDaemon(true);
+        this.committer.start();
+    }
+
+    public CompletableFuture<Boolean> submit(Transaction transaction) {
+        return enqueue(transaction, false);
+    }
+
+    /**
+     * Like {@link #submit}, but the debit is skipped, and the future
+     * completes with false, if it would take the balance below zero.
+     */
+    public CompletableFuture<Boolean> submitDebit(Transaction debit) {
+        return enqueue(debit, true);
+    }
+
+    private CompletableFuture<Boolean> enqueue(Transaction transaction, boolean checkBalance) {
+        if (!running) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Group commit writer is closed"));
+        }
+        Pending pending = new Pending(transaction, checkBalance, new CompletableFuture<>());
+        queue.add(pending);
+        // Closed while this was being added: if nothing has taken it off the queue, nothing will
+        if (!running && queue.remove(pending)) {
+            pending.done().completeExceptionally(new IllegalStateException("Group commit writer is closed"));
+        }
+        return pending.done();
+    }
+
+    private void run() {
+        List<Pending> batch = new ArrayList<>(maxBatch);
+        while (running || !queue.isEmpty()) {
+            try {
+                Pending first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                collect(batch);
+                commit(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+                IllegalStateException stopped = new IllegalStateException("Group commit writer was interrupted");
+                fail(batch, stopped);
+                fail(queue, stopped);
+                break;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    // Waits out the rest of the window for more rows to ride along on this commit
+    private void collect(List<Pending> batch) throws InterruptedException {
+        long deadline = System.nanoTime() + windowNanos;
+        while (batch.size() < maxBatch) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                queue.drainTo(batch, maxBatch - batch.size());
+                return;
+            }
+            Pending next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    private void commit(List<Pending> batch) {
+        try (ConnectionManager.Lease lease = connections.writer()) {
+            boolean[] written = new boolean[batch.size()];
+            if (batch.stream().noneMatch(Pending::checkBalance)) {
+                TransactionBatchWriter.insertBatch(lease, batch.stream().map(Pending::transaction).iterator(),
+                        batch.size());
+                Arrays.fill(written, true);
+            } else {
+                // Row by row, so each debit sees the balance left by the rows before it
+                Migration.inTransaction(lease.connection(), conn -> {
+                    for (int i = 0; i < batch.size(); i++) {
+                        Pending pending = batch.get(i);
+                        written[i] = pending.checkBalance()
+                                ? LedgerService.insertDebit(lease, pending.transaction())
+                                : insert(lease, pending.transaction());
+                    }
+                });
+            }
+            commits.increment();
+            for (int i = 0; i < batch.size(); i++) {
+                if (written[i]) {
+                    rows.increment();
+                }
+                batch.get(i).done().complete(written[i]);
+            }
+        } catch (SQLException | RuntimeException e) {
+            fail(batch, e);
+        }
+    }
+
+    // Futures already completed are left as they are
+    private static void fail(Iterable<Pending> pending, Throwable cause) {
+        for (Pending p : pending) {
+            p.done().completeExceptionally(cause);
+        }
+    }
+
+    private static boolean insert(ConnectionManager.Lease lease, Transaction transaction) throws SQLException {
+        TransactionBatchWriter.intern(lease, transaction.description());
+        PreparedStatement ps = lease.prepare(TransactionBatchWriter.INSERT_SQL);
+        TransactionBatchWriter.bind(ps, transaction);
+        return ps.executeUpdate() == 1;
+    }
+
+    public long commitCount() {
+        return commits.sum();
+    }
+
+    public long rowCount() {
+        return rows.sum();
+    }
+
+    /**
+     * Stops accepting rows, commits everything already queued and waits for
+     * the background thread to finish. If the wait is interrupted, rows
+     * still queued fail instead and the interrupt is kept.
+     */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            committer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        Pending leftover;
+        while ((leftover = queue.poll()) != null) {
+            leftover.done().completeExceptionally(new IllegalStateException("Group commit writer is closed"));
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package org.example;
+
+import java.util.List;
+
+/**
+ * One page of a user's transactions, newest first.
+ *
+ * The cursors are transaction ids to pass back to {@link TransactionHistory}
+ * for the neighbouring pages; a null cursor means there is no such page.
+ */
+public record HistoryPage(List<Entry> entries, Long olderCursor, Long newerCursor) {
+
+    public record Entry(long id, String type, long amount, String description, String timestamp) {
+    }
+
+    public boolean hasOlder() {
+        return olderCursor != null;
+    }
+
+    public boolean hasNewer() {
+        return newerCursor != null;
+    }
+}
@@ -0,0 +1,166 @@
+package org.example;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * A filtered, sorted view of one user's transactions.
+ *
+ * User input only ever becomes bind parameters. The SQL text depends only
+ * on which filters are set, so each filter shape maps to one statement in
+ * the connection's statement cache and is compiled once, however many
+ * different values it is run with.
+ */
+public class HistoryQuery {
+    public enum SortField {
+        DATE("timestamp"),
+        AMOUNT("amount");
+
+        private final String column;
+
+        SortField(String column) {
+            this.column = column;
+        }
+    }
+
+    private static final int FETCH_SIZE = 500;
+
+    private final String email;
+    private LocalDate from;
+    private LocalDate to;
+    private String type;
+    private Long minAmount;
+    private Long maxAmount;
+    private SortField sortField;
+    private boolean descending;
+
+    private HistoryQuery(String email) {
+        this.email = email;
+    }
+
+    /**
+     * Every query is scoped to a single user, so there is no way to build
+     * one that reads other users' rows.
+     */
+    public static HistoryQuery forUser(String email) {
+        if (email == null || email.isEmpty()) {
+            throw new IllegalArgumentException("A history query needs a user");
+        }
+        return new HistoryQuery(email);
+    }
+
+    /**
+     * Transactions on or between the two dates, both inclusive.
+     */
+    public HistoryQuery between(LocalDate from, LocalDate to) {
+        this.from = from;
+        this.to = to;
+        return this;
+    }
+
+    /**
+     * Debit or Credit, in any case.
+     */
+    public HistoryQuery type(String type) {
+        if (type.equalsIgnoreCase("Debit")) {
+            this.type = "Debit";
+        } else if (type.equalsIgnoreCase("Credit")) {
+            this.type = "Credit";
+        } else {
+            throw new IllegalArgumentException("Type must be Debit or Credit: " + type);
+        }
+        return this;
+    }
+
+    /**
+     * Amounts in cents, both bounds inclusive.
+     */
+    public HistoryQuery amountBetween(long min, long max) {
+        this.minAmount = min;
+        this.maxAmount = max;
+        return this;
+    }
+
+    public HistoryQuery sortBy(SortField field, boolean descending) {
+        this.sortField = field;
+        this.descending = descending;
+        return this;
+    }
+
+    String sql() {
+        StringBuilder sql = new StringBuilder(
+                "SELECT id, type, amount, description, timestamp FROM transactions WHERE user_email = ?");
+        // type before the date range so idx_transactions_user_type_time can serve both
+        if (type != null) {
+            sql.append(" AND type = ?");
+        }
+        // Plain range on the column, DATE(timestamp) would force a scan
+        if (from != null) {
+            sql.append(" AND timestamp >= ?");
+        }
+        if (to != null) {
+            sql.append(" AND timestamp < ?");
+        }
+        if (minAmount != null) {
+            sql.append(" AND amount BETWEEN ? AND ?");
+        }
+        if (sortField != null) {
+            String direction = descending ? " DESC" : " ASC";
+            sql.append(" ORDER BY ").append(sortField.column).append(direction).append(", id").append(direction);
+        }
+        return sql.toString();
+    }
+
+    private List<Object> parameters() {
+        List<Object> params = new ArrayList<>(7);
+        params.add(email);
+        if (type != null) {
+            params.add(type);
+        }
+        if (from != null) {
+            params.add(from.toString());
+        }
+        if (to != null) {
+            params.add(to.plusDays(1).toString());
+        }
+        if (minAmount != null) {
+            params.add(minAmount);
+            params.add(maxAmount);
+        }
+        return params;
+    }
+
+    /**
+     * Streams matching rows to the consumer as they are read and returns
+     * how many there were.
+     */
+    public long forEach(ConnectionManager connections, Consumer<HistoryPage.Entry> consumer) throws SQLException {
+        try (ConnectionManager.Lease lease = connections.reader()) {
+            PreparedStatement ps = lease.prepare(sql());
+            ps.setFetchSize(FETCH_SIZE);
+            List<Object> params = parameters();
+            for (int i = 0; i < params.size(); i++) {
+                ps.setObject(i + 1, params.get(i));
+            }
+
+            long rows = 0;
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    consumer.accept(new HistoryPage.Entry(
+                            rs.getLong(1),
+                            rs.getString(2),
+                            rs.getLong(3),
+                            rs.getString(4),
+                            rs.getString(5)));
+                    rows++;
+                }
+            }
+            return rows;
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package org.example;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Outcome of a statement import: how many rows were read and written,
+ * which rows were rejected and why, and how long it took.
+ */
+public record ImportReport(long rowsRead, long rowsImported, List<Rejection> rejected, Duration elapsed) {
+
+    public record Rejection(long line, String reason, String content) {
+    }
+
+    public double rowsPerSecond() {
+        double seconds = elapsed.toNanos() / 1e9;
+        return seconds == 0 ? 0 : rowsRead / seconds;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Read %d rows, imported %d, rejected %d in %d ms (%.0f rows/s)",
+                rowsRead, rowsImported, rejected.size(), elapsed.toMillis(), rowsPerSecond());
+    }
+}
@@ -0,0 +1,13 @@
+package org.example;
+
+import java.time.LocalDate;
+
+/**
+ * One scheduled loan payment. Amounts are in cents.
+ */
+public record Installment(int number, LocalDate dueDate, long principal, long interest) {
+
+    public long amount() {
+        return principal + interest;
+    }
+}
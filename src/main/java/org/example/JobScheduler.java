@@ -0,0 +1,198 @@
+package org.example;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs calendar jobs exactly once per slot, across restarts.
+ *
+ * Every run is recorded in job_runs under (job, slot). A run is claimed by
+ * inserting that row, so a slot that already succeeded is never run again,
+ * and a slot that was missed, failed or interrupted is picked up on the
+ * next tick. All jobs run on one thread, one after another, so they never
+ * overlap each other or themselves.
+ *
+ * The ledger is a single SQLite file used by one process, so any run still
+ * marked running when the scheduler starts belongs to a process that died
+ * and is marked interrupted.
+ */
+public class JobScheduler {
+    private static final String INTERRUPT_SQL = "UPDATE job_runs SET status = 'interrupted' WHERE status = 'running'";
+    private static final String CLAIM_SQL = """
+            INSERT INTO job_runs(job, slot, status, attempts, started_at)
+            VALUES (?, ?, 'running', 1, CURRENT_TIMESTAMP)
+            ON CONFLICT(job, slot) DO UPDATE
+            SET status = 'running', attempts = attempts + 1, started_at = CURRENT_TIMESTAMP, error = NULL
+            WHERE status IN ('failed', 'interrupted') AND attempts < ?
+            """;
+    private static final String CHECKPOINT_SQL = "SELECT checkpoint FROM job_runs WHERE job = ? AND slot = ?";
+    private static final String FINISH_SQL = """
+            UPDATE job_runs SET status = ?, finished_at = CURRENT_TIMESTAMP, duration_ms = ?, error = ?
+            WHERE job = ? AND slot = ?
+            """;
+
+    private record Registration(String name, Schedule schedule, ScheduledJob job) {
+    }
+
+    private final ConnectionManager connections;
+    private final Clock clock;
+    private final int maxAttempts;
+    private final Map<String, Registration> jobs = new LinkedHashMap<>();
+    // Last slot per job known to be settled, so idle ticks do not touch the database
+    private final Map<String, LocalDateTime> settled = new ConcurrentHashMap<>();
+    private final Map<String, JobStats> stats = new ConcurrentHashMap<>();
+    private ScheduledExecutorService executor;
+    private volatile boolean stopping;
+
+    public JobScheduler(ConnectionManager connections, Clock clock, int maxAttempts) {
+        this.connections = connections;
+        this.clock = clock;
+        this.maxAttempts = maxAttempts;
+    }
+
+    public synchronized JobScheduler register(String name, Schedule schedule, ScheduledJob job) {
+        if (executor != null) {
+            throw new IllegalStateException("Register jobs before starting the scheduler");
+        }
+        jobs.put(name, new Registration(name, schedule, job));
+        stats.put(name, new JobStats(0, 0, 0, null, null));
+        return this;
+    }
+
+    /**
+     * Starts checking for due slots every tick, beginning immediately.
+     */
+    public synchronized void start(Duration tick) throws SQLException {
+        if (executor != null) {
+            return;
+        }
+        try (ConnectionManager.Lease lease = connections.writer()) {
+            lease.prepare(INTERRUPT_SQL).executeUpdate();
+        }
+
+        executor = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "job-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::tick, 0, tick.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops starting new runs and waits up to timeout for the current one
+     * to finish. A job still running after that is interrupted; its slot is
+     * resumed on the next start. Returns true if everything finished in time.
+     */
+    public boolean shutdown(Duration timeout) throws InterruptedException {
+        ScheduledExecutorService running;
+        synchronized (this) {
+            stopping = true;
+            running = executor;
+        }
+        if (running == null) {
+            return true;
+        }
+        running.shutdown();
+        if (running.awaitTermination(timeout.toMillis(), TimeUnit.MILLISECONDS)) {
+            return true;
+        }
+        running.shutdownNow();
+        running.awaitTermination(5, TimeUnit.SECONDS);
+        return false;
+    }
+
+    boolean isStopping() {
+        return stopping;
+    }
+
+    public Map<String, JobStats> stats() {
+        return new LinkedHashMap<>(stats);
+    }
+
+    /**
+     * Runs every job whose latest slot has not been settled yet.
+     */
+    void tick() {
+        LocalDateTime now = LocalDateTime.now(clock);
+        for (Registration registration : jobs.values()) {
+            if (stopping) {
+                return;
+            }
+            LocalDateTime slot = registration.schedule().latestSlot(now);
+            if (slot.equals(settled.get(registration.name()))) {
+                continue;
+            }
+            try {
+                runIfClaimed(registration, slot);
+            } catch (SQLException e) {
+                System.out.println("Error scheduling job " + registration.name() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private void runIfClaimed(Registration registration, LocalDateTime slot) throws SQLException {
+        String name = registration.name();
+        long checkpoint;
+        try (ConnectionManager.Lease lease = connections.writer()) {
+            PreparedStatement claim = lease.prepare(CLAIM_SQL);
+            claim.setString(1, name);
+            claim.setString(2, slot.toString());
+            claim.setInt(3, maxAttempts);
+            if (claim.executeUpdate() == 0) {
+                // Succeeded already, or out of attempts until the next slot
+                settled.put(name, slot);
+                return;
+            }
+
+            PreparedStatement read = lease.prepare(CHECKPOINT_SQL);
+            read.setString(1, name);
+            read.setString(2, slot.toString());
+            try (ResultSet rs = read.executeQuery()) {
+                checkpoint = rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+
+        long start = System.nanoTime();
+        String status;
+        String error = null;
+        try {
+            registration.job().run(new ScheduledJob.Context(name, slot, checkpoint, this));
+            status = stopping ? "interrupted" : "succeeded";
+        } catch (Exception e) {
+            status = stopping ? "interrupted" : "failed";
+            error = String.valueOf(e.getMessage());
+            System.out.println("Job " + name + " failed for slot " + slot + ": " + error);
+            e.printStackTrace();
+        }
+        long millis = (System.nanoTime() - start) / 1_000_000;
+
+        try (ConnectionManager.Lease lease = connections.writer()) {
+            PreparedStatement finish = lease.prepare(FINISH_SQL);
+            finish.setString(1, status);
+            finish.setLong(2, millis);
+            finish.setString(3, error);
+            finish.setString(4, name);
+            finish.setString(5, slot.toString());
+            finish.executeUpdate();
+        }
+        if (status.equals("succeeded")) {
+            settled.put(name, slot);
+        }
+
+        boolean failed = status.equals("failed");
+        String lastError = error;
+        stats.compute(name, (k, old) -> new JobStats(old.runs() + 1, old.failures() + (failed ? 1 : 0),
+                millis, slot.toString(), failed ? lastError : old.lastError()));
+        System.out.println("Job " + name + " " + status + " for slot " + slot + " in " + millis + " ms");
+    }
+}
@@ -0,0 +1,13 @@
+package org.example;
+
+/**
+ * Per-job counters kept by {@link JobScheduler} since the process started.
+ */
+public record JobStats(long runs, long failures, long lastDurationMs, String lastSlot, String lastError) {
+
+    @Override
+    public String toString() {
+        return String.format("runs=%d, failures=%d, lastDuration=%d ms, lastSlot=%s%s",
+                runs, failures, lastDurationMs, lastSlot, lastError == null ? "" : ", lastError=" + lastError);
+    }
+}
@@ -0,0 +1,111 @@
+package org.example;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.YearMonth;
+
+/**
+ * Point-in-time balances from the double-entry journal.
+ *
+ * Every transaction is journalled as two postings by a trigger (see
+ * migration V13), so the journal needs no writer of its own. A balance as
+ * of a date is the account's nearest snapshot at or before that date plus
+ * the postings between the snapshot and the end of the day, read from the
+ * covering index on (account, posted_at). With monthly snapshots that tail
+ * is at most a month of postings, however long the history is.
+ */
+public class Journal {
+    /** Counterparty of every posting on a user account: money entering or leaving the ledger. */
+    public static final String EXTERNAL_ACCOUNT = "ledger:external";
+
+    static final String SNAPSHOT_SQL = """
+            SELECT as_of, balance FROM balance_snapshots
+            WHERE account = ? AND as_of <= ?
+            ORDER BY as_of DESC
+            LIMIT 1
+            """;
+    static final String TAIL_SQL = """
+            SELECT COALESCE(SUM(amount), 0), COUNT(*) FROM journal_postings
+            WHERE account = ? AND posted_at >= ? AND posted_at < ?
+            """;
+    private static final String TRIAL_BALANCE_SQL = "SELECT COALESCE(SUM(amount), 0) FROM journal_postings";
+
+    /**
+     * A balance, the snapshot it started from (null if there was none) and
+     * how many postings were replayed on top of it.
+     */
+    public record Balance(long balance, LocalDate snapshot, long replayed) {
+    }
+
+    /** Opening and closing balance of one month. */
+    public record MonthlyStatement(YearMonth month, long opening, long closing) {
+    }
+
+    private final ConnectionManager connections;
+
+    public Journal(ConnectionManager connections) {
+        this.connections = connections;
+    }
+
+    /**
+     * The account's balance at the end of the given day.
+     */
+    public Balance balanceAsOf(String account, LocalDate date) throws SQLException {
+        try (ConnectionManager.Lease lease = connections.reader()) {
+            return balanceBefore(lease, account, date.plusDays(1));
+        }
+    }
+
+    public MonthlyStatement statement(String account, YearMonth month) throws SQLException {
+        try (ConnectionManager.Lease lease = connections.reader()) {
+            return new MonthlyStatement(month,
+                    balanceBefore(lease, account, month.atDay(1)).balance(),
+                    balanceBefore(lease, account, month.plusMonths(1).atDay(1)).balance());
+        }
+    }
+
+    /**
+     * Sum of every posting in the journal, which double entry keeps at
+     * zero. Reads the whole journal; meant for audits, not hot paths.
+     */
+    public long trialBalance() throws SQLException {
+        try (ConnectionManager.Lease lease = connections.reader()) {
+            try (ResultSet rs = lease.prepare(TRIAL_BALANCE_SQL).executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
+
+    /**
+     * Balance from postings dated before the start of the given day, on an
+     * already leased connection. Also used by {@link JournalSnapshotJob}.
+     */
+    static Balance balanceBefore(ConnectionManager.Lease lease, String account, LocalDate day) throws SQLException {
+        String end = day.toString();
+        String from = "";
+        LocalDate snapshot = null;
+        long balance = 0;
+
+        PreparedStatement nearest = lease.prepare(SNAPSHOT_SQL);
+        nearest.setString(1, account);
+        nearest.setString(2, end);
+        try (ResultSet rs = nearest.executeQuery()) {
+            if (rs.next()) {
+                from = rs.getString(1);
+                snapshot = LocalDate.parse(from);
+                balance = rs.getLong(2);
+            }
+        }
+
+        PreparedStatement tail = lease.prepare(TAIL_SQL);
+        tail.setString(1, account);
+        tail.setString(2, from);
+        tail.setString(3, end);
+        try (ResultSet rs = tail.executeQuery()) {
+            rs.next();
+            return new Balance(balance + rs.getLong(1), snapshot, rs.getLong(2));
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package org.example;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Finds the category of a description from keyword rules in one pass over
+ * the text, however many rules there are.
+ *
+ * The keywords are compiled into an Aho-Corasick automaton with every
+ * transition precomputed, so each character of the description costs one
+ * array lookup. Matching ignores case, and a keyword only counts where a
+ * word starts: "grocer" matches "Groceries" but "tax" does not match
+ * "syntax". The automaton is immutable, so one instance can categorize
+ * from any number of threads; {@link #current} keeps one per database for
+ * the write path.
+ */
+public class KeywordCategorizer {
+    static final String RULES_SQL = "SELECT keyword, category_id, priority FROM category_rules";
+    static final String RULES_VERSION_SQL = "SELECT version FROM category_rules_version WHERE id = 1";
+    /** What categorize returns when no rule matches. */
+    public static final int UNCATEGORIZED = 0;
+
+    // Compiled rules of each database, by URL, with the rules version they were read at
+    private record Compiled(long version, KeywordCategorizer categorizer) {
+    }
+
+    private static final Map<String, Compiled> COMPILED = new ConcurrentHashMap<>();
+
+    private final CategoryRule[] rules;
+    private final int[] keywordLength;
+    // Symbol 0 stands for every character that appears in no keyword
+    private final int[] asciiSymbol = new int[128];
+    private final Map<Character, Integer> otherSymbol = new HashMap<>();
+    private final int width;
+    // next[state * width + symbol], with the failure transitions folded in
+    private final int[] next;
+    // Rule whose keyword ends at the state, or -1
+    private final int[] ruleAt;
+    // Nearest state on the failure chain that ends a keyword, or 0 for none
+    private final int[] outputLink;
+
+    public KeywordCategorizer(List<CategoryRule> rules) {
+        this.rules = rules.toArray(new CategoryRule[0]);
+        this.keywordLength = new int[this.rules.length];
+        String[] keywords = new String[this.rules.length];
+        int symbols = 1;
+        int maxStates = 1;
+        for (int r = 0; r < this.rules.length; r++) {
+            keywords[r] = lowerCase(this.rules[r].keyword().trim());
+            if (keywords[r].isEmpty()) {
+                throw new IllegalArgumentException("Category rule with an empty keyword");
+            }
+            keywordLength[r] = keywords[r].length();
+            maxStates += keywords[r].length();
+            for (char c : keywords[r].toCharArray()) {
+                if (c < 128 ? asciiSymbol[c] == 0 : !otherSymbol.containsKey(c)) {
+                    if (c < 128) {
+                        asciiSymbol[c] = symbols++;
+                    } else {
+                        otherSymbol.put(c, symbols++);
+                    }
+                }
+            }
+        }
+        width = symbols;
+        next = new int[maxStates * width];
+        ruleAt = new int[maxStates];
+        outputLink = new int[maxStates];
+
+        // The trie; 0 means no edge yet, as no edge leads back to the root
+        int states = 1;
+        ruleAt[0] = -1;
+        for (int r = 0; r < keywords.length; r++) {
+            int state = 0;
+            for (char c : keywords[r].toCharArray()) {
+                int edge = state * width + symbol(c);
+                if (next[edge] == 0) {
+                    ruleAt[states] = -1;
+                    next[edge] = states++;
+                }
+                state = next[edge];
+            }
+            if (ruleAt[state] < 0 || better(r, ruleAt[state])) {
+                ruleAt[state] = r;
+            }
+        }
+
+        // Breadth first, so a state's failure state is finished before the state itself
+        int[] fail = new int[states];
+        int[] queue = new int[states];
+        int head = 0;
+        int tail = 0;
+        for (int s = 0; s < width; s++) {
+            if (next[s] != 0) {
+                queue[tail++] = next[s];
+            }
+        }
+        while (head < tail) {
+            int state = queue[head++];
+            outputLink[state] = ruleAt[fail[state]] >= 0 ? fail[state] : outputLink[fail[state]];
+            for (int s = 0; s < width; s++) {
+                int edge = state * width + s;
+                int target = next[edge];
+                if (target != 0) {
+                    fail[target] = next[fail[state] * width + s];
+                    queue[tail++] = target;
+                } else {
+                    next[edge] = next[fail[state] * width + s];
+                }
+            }
+        }
+    }
+
+    public static KeywordCategorizer fromDatabase(ConnectionManager connections) throws SQLException {
+        try (ConnectionManager.Lease lease = connections.reader()) {
+            return fromDatabase(lease);
+        }
+    }
+
+    /**
+     * The rules of the lease's database, compiled once and again only after
+     * category_rules has changed (migration V17 counts every change). Costs
+     * one primary-key read when nothing has changed.
+     */
+    static KeywordCategorizer current(ConnectionManager.Lease lease) throws SQLException {
+        long version;
+        try (ResultSet rs = lease.prepare(RULES_VERSION_SQL).executeQuery()) {
+            version = rs.next() ? rs.getLong(1) : 0;
+        }
+        String database = lease.connection().getMetaData().getURL();
+        Compiled compiled = COMPILED.get(database);
+        if (compiled == null || compiled.version() != version) {
+            compiled = new Compiled(version, fromDatabase(lease));
+            COMPILED.put(database, compiled);
+        }
+        return compiled.categorizer();
+    }
+
+    /** The rules as seen on an already leased connection, inside its open transaction if any. */
+    static KeywordCategorizer fromDatabase(ConnectionManager.Lease lease) throws SQLException {
+        List<CategoryRule> rules = new ArrayList<>();
+        try (ResultSet rs = lease.prepare(RULES_SQL).executeQuery()) {
+            while (rs.next()) {
+                rules.add(new CategoryRule(rs.getString(1), rs.getInt(2), rs.getInt(3)));
+            }
+        }
+        return new KeywordCategorizer(rules);
+    }
+
+    /**
+     * The category of the best rule matching the text, or
+     * {@link #UNCATEGORIZED} if none does.
+     */
+    public int categorize(String text) {
+        if (text == null) {
+            return UNCATEGORIZED;
+        }
+        int state = 0;
+        int best = -1;
+        for (int i = 0; i < text.length(); i++) {
+            state = next[state * width + symbol(Character.toLowerCase(text.charAt(i)))];
+            for (int s = ruleAt[state] >= 0 ? state : outputLink[state]; s != 0; s = outputLink[s]) {
+                int rule = ruleAt[s];
+                int start = i - keywordLength[rule] + 1;
+                boolean wordStart = start == 0 || !Character.isLetterOrDigit(text.charAt(start - 1));
+                if (wordStart && (best < 0 || better(rule, best))) {
+                    best = rule;
+                }
+            }
+        }
+        return best < 0 ? UNCATEGORIZED : rules[best].categoryId();
+    }
+
+    // Char by char, exactly as categorize lowercases the text
+    private static String lowerCase(String keyword) {
+        char[] chars = keyword.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(chars[i]);
+        }
+        return new String(chars);
+    }
+
+    private int symbol(char c) {
+        return c < 128 ? asciiSymbol[c] : otherSymbol.getOrDefault(c, 0);
+    }
+
+    private boolean better(int rule, int than) {
+        if (rules[rule].priority() != rules[than].priority()) {
+            return rules[rule].priority() > rules[than].priority();
+        }
+        return keywordLength[rule] > keywordLength[than];
+    }
+}
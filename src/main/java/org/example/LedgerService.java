@@ -0,0 +1,361 @@
+package org.example;
+
+import java.io.IOException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Debits and credits for any number of concurrent sessions.
+ *
+ * A debit is written with one conditional insert that only goes in if the
+ * balance covers it, and everything a debit does to one account (the
+ * debit, then the savings deduction) runs under that account's lock
+ * stripe: debits on the same account queue up, debits on different
+ * accounts do not wait for each other, and with group commit they share
+ * one fsync. {@link RepaymentProcessor} debits through the same insert
+ * under the same locks (see {@link #debitWithin}), so debits made through
+ * this service and loan repayments cannot overdraw an account between them.
+ *
+ * With a {@link CaptureLog}, debits and credits are appended to the log
+ * instead of waiting for a commit. A debit is then checked against the
+ * stored balance plus the account's undrained records, under the same
+ * stripe lock.
+ *
+ * Other writers do not take the account locks. Statement imports
+ * ({@link TransactionImporter}) record debits that already happened at the
+ * bank and insert them unconditionally, so they can take a balance below
+ * zero. {@link MonthlySavingsJob} checks the stored balance in its own
+ * transaction, which does not include undrained capture-log records.
+ *
+ * The service holds no per-user state and never blocks inside a
+ * synchronized block, so sessions can run on virtual threads.
+ */
+public class LedgerService {
+    static final String DEBIT_SQL = """
+            INSERT INTO transactions (type, amount, description, user_email, timestamp, description_id, category_id)
+            SELECT 'Debit', ?1, ?2, ?3, COALESCE(?4, CURRENT_TIMESTAMP),
+                   (SELECT id FROM descriptions WHERE text = ?2),
+                   (SELECT category_id FROM descriptions WHERE text = ?2)
+            WHERE COALESCE((SELECT balance FROM account_balances WHERE user_email = ?3), 0) >= ?1
+            """;
+    static final String BALANCE_SQL = "SELECT balance FROM account_balances WHERE user_email = ?";
+    private static final String SAVEPOINT_SQL = "SAVEPOINT insert_debit";
+    private static final String ROLLBACK_TO_SAVEPOINT_SQL = "ROLLBACK TO insert_debit";
+    private static final String RELEASE_SAVEPOINT_SQL = "RELEASE insert_debit";
+    private static final String SAVINGS_PERCENT_SQL = "SELECT percentage FROM savings WHERE user_email = ?";
+    private static final String SAVINGS_CREDIT_SQL = "UPDATE savings SET balance = balance + ? WHERE user_email = ?";
+
+    public enum Status { OK, INVALID, UNKNOWN_ACCOUNT, BLOCKED, INSUFFICIENT_FUNDS }
+
+    /** Work run while holding account locks, see {@link #lockAccounts}. */
+    @FunctionalInterface
+    interface AccountWork {
+        void run() throws SQLException;
+    }
+
+    /**
+     * What happened to a debit or credit. balance is the account balance
+     * after it, and saved is what the debit moved into savings.
+     */
+    public record Result(Status status, String reason, long balance, long saved) {
+        public boolean succeeded() {
+            return status == Status.OK;
+        }
+    }
+
+    private final ConnectionManager connections;
+    private final UserCache users;
+    private final LoanBlocklist blocklist;
+    private final GroupCommitWriter groupCommit;
+    private final CaptureLog capture;
+    private final ReentrantLock[] stripes;
+
+    /**
+     * groupCommit may be null, in which case every write commits on its own.
+     * capture may be null, in which case debits and credits go straight to
+     * the database. stripes is rounded up to a power of two.
+     */
+    public LedgerService(ConnectionManager connections, UserCache users, LoanBlocklist blocklist,
+                         GroupCommitWriter groupCommit, CaptureLog capture, int stripes) {
+        this.connections = connections;
+        this.users = users;
+        this.blocklist = blocklist;
+        this.groupCommit = groupCommit;
+        this.capture = capture;
+        this.stripes = new ReentrantLock[Integer.highestOneBit(Math.max(1, stripes - 1)) << 1];
+        for (int i = 0; i < this.stripes.length; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * A view of the service for one signed-in user.
+     */
+    public Session session(String email) {
+        return new Session(email);
+    }
+
+    public final class Session {
+        private final String email;
+
+        private Session(String email) {
+            this.email = email;
+        }
+
+        public String email() {
+            return email;
+        }
+
+        public Result debit(long amount, String description) throws SQLException {
+            return LedgerService.this.debit(email, amount, description);
+        }
+
+        public Result credit(long amount, String description) throws SQLException {
+            return LedgerService.this.credit(email, amount, description);
+        }
+
+        public long balance() throws SQLException {
+            return LedgerService.this.balance(email);
+        }
+    }
+
+    public Result debit(String email, long amount, String description) throws SQLException {
+        Result rejected = check(email, "Debit", amount, description);
+        if (rejected != null) {
+            return rejected;
+        }
+
+        ReentrantLock lock = stripeFor(email);
+        lock.lock();
+        try {
+            if (!writeDebit(new Transaction("Debit", amount, description, email))) {
+                return new Result(Status.INSUFFICIENT_FUNDS, "balance is below " + Money.format(amount),
+                        balance(email), 0);
+            }
+            long saved = moveToSavings(email, amount);
+            return new Result(Status.OK, null, balance(email), saved);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Result credit(String email, long amount, String description) throws SQLException {
+        Result rejected = check(email, "Credit", amount, description);
+        if (rejected != null) {
+            return rejected;
+        }
+
+        Transaction credit = new Transaction("Credit", amount, description, email);
+        if (capture != null) {
+            capture(credit);
+        } else if (groupCommit != null) {
+            join(groupCommit.submit(credit));
+        } else {
+            try (ConnectionManager.Lease lease = connections.writer()) {
+                TransactionBatchWriter.intern(lease, credit.description());
+                PreparedStatement ps = lease.prepare(TransactionBatchWriter.INSERT_SQL);
+                TransactionBatchWriter.bind(ps, credit);
+                ps.executeUpdate();
+            }
+        }
+        return new Result(Status.OK, null, balance(email), 0);
+    }
+
+    /**
+     * The account's balance, including captured records not drained yet.
+     */
+    public long balance(String email) throws SQLException {
+        return capture != null ? capture.balance(email, this::storedBalance) : storedBalance(email);
+    }
+
+    private long storedBalance(String email) throws SQLException {
+        try (ConnectionManager.Lease lease = connections.reader()) {
+            return storedBalance(lease, email);
+        }
+    }
+
+    private static long storedBalance(ConnectionManager.Lease lease, String email) throws SQLException {
+        PreparedStatement ps = lease.prepare(BALANCE_SQL);
+        ps.setString(1, email);
+        try (ResultSet rs = ps.executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    /**
+     * Inserts the debit only if the balance covers it. Returns whether it went in.
+     * A new description is added to the dictionary in a savepoint with the
+     * debit, so a declined debit leaves no dictionary row behind.
+     */
+    static boolean insertDebit(ConnectionManager.Lease lease, Transaction debit) throws SQLException {
+        PreparedStatement ps = lease.prepare(DEBIT_SQL);
+        ps.setLong(1, debit.amount());
+        ps.setString(2, debit.description());
+        ps.setString(3, debit.userEmail());
+        ps.setString(4, debit.timestamp());
+        if (debit.description() == null || TransactionBatchWriter.known(lease, debit.description())) {
+            return ps.executeUpdate() == 1;
+        }
+
+        // Outside a transaction the savepoint opens one, and its release commits it
+        lease.prepare(SAVEPOINT_SQL).execute();
+        boolean inserted = false;
+        try {
+            TransactionBatchWriter.intern(lease, debit.description());
+            inserted = ps.executeUpdate() == 1;
+        } finally {
+            if (!inserted) {
+                lease.prepare(ROLLBACK_TO_SAVEPOINT_SQL).execute();
+            }
+            lease.prepare(RELEASE_SAVEPOINT_SQL).execute();
+        }
+        return inserted;
+    }
+
+    /**
+     * Runs work holding the locks of all the accounts, so no debit on any of
+     * them runs in between. Call it before taking the writer, as debit()
+     * does; the locks are taken in stripe order, so callers locking
+     * overlapping accounts cannot deadlock.
+     */
+    void lockAccounts(Collection<String> emails, AccountWork work) throws SQLException {
+        int[] order = emails.stream().mapToInt(this::stripeIndex).distinct().sorted().toArray();
+        for (int i : order) {
+            stripes[i].lock();
+        }
+        try {
+            work.run();
+        } finally {
+            for (int i = order.length - 1; i >= 0; i--) {
+                stripes[order[i]].unlock();
+            }
+        }
+    }
+
+    /**
+     * Inserts the debit on the caller's writer lease, inside the caller's
+     * transaction, if the balance covers it; in capture mode the balance
+     * includes undrained records. The caller holds the account's lock (see
+     * {@link #lockAccounts}). Returns whether the debit went in.
+     */
+    boolean debitWithin(ConnectionManager.Lease lease, Transaction debit) throws SQLException {
+        if (capture != null
+                && capture.balance(debit.userEmail(), email -> storedBalance(lease, email)) < debit.amount()) {
+            return false;
+        }
+        return insertDebit(lease, debit);
+    }
+
+    // Returns the rejection, or null if the transaction may go ahead
+    private Result check(String email, String type, long amount, String description) throws SQLException {
+        String reason = TransactionRules.validate(type, amount, description);
+        if (reason != null) {
+            return new Result(Status.INVALID, reason, 0, 0);
+        }
+        Optional<UserIdentity> user = users.get(email);
+        if (user.isEmpty()) {
+            return new Result(Status.UNKNOWN_ACCOUNT, "no account for " + email, 0, 0);
+        }
+        if (blocklist.isBlocked(user.get().id())) {
+            return new Result(Status.BLOCKED, "account has overdue loans", 0, 0);
+        }
+        return null;
+    }
+
+    // Caller holds the account's stripe lock
+    private boolean writeDebit(Transaction debit) throws SQLException {
+        if (capture != null) {
+            if (balance(debit.userEmail()) < debit.amount()) {
+                return false;
+            }
+            capture(debit);
+            return true;
+        }
+        if (groupCommit != null) {
+            return join(groupCommit.submitDebit(debit));
+        }
+        try (ConnectionManager.Lease lease = connections.writer()) {
+            return insertDebit(lease, debit);
+        }
+    }
+
+    // Moves the user's savings percentage of a debit into savings; returns the amount moved
+    private long moveToSavings(String email, long debitAmount) throws SQLException {
+        // Read on a reader so users without savings never touch the writer twice
+        long deduction;
+        try (ConnectionManager.Lease lease = connections.reader()) {
+            PreparedStatement percent = lease.prepare(SAVINGS_PERCENT_SQL);
+            percent.setString(1, email);
+            try (ResultSet rs = percent.executeQuery()) {
+                if (!rs.next()) {
+                    return 0;
+                }
+                deduction = Money.percent(debitAmount, rs.getDouble(1));
+            }
+        }
+        if (deduction <= 0) {
+            return 0;
+        }
+        // The savings credit has to commit with its debit, so in capture mode the
+        // deduction skips the log; the balance check then has to count the log
+        if (capture != null && balance(email) < deduction) {
+            return 0;
+        }
+
+        try (ConnectionManager.Lease lease = connections.writer()) {
+            boolean[] moved = new boolean[1];
+            Migration.inTransaction(lease.connection(), conn -> {
+                Transaction debit = new Transaction("Debit", deduction, "Savings deduction", email);
+                if (capture != null) {
+                    TransactionBatchWriter.intern(lease, debit.description());
+                    PreparedStatement ps = lease.prepare(TransactionBatchWriter.INSERT_SQL);
+                    TransactionBatchWriter.bind(ps, debit);
+                    moved[0] = ps.executeUpdate() == 1;
+                } else {
+                    moved[0] = insertDebit(lease, debit);
+                }
+                if (moved[0]) {
+                    PreparedStatement credit = lease.prepare(SAVINGS_CREDIT_SQL);
+                    credit.setLong(1, deduction);
+                    credit.setString(2, email);
+                    credit.executeUpdate();
+                }
+            });
+            return moved[0] ? deduction : 0;
+        }
+    }
+
+    private ReentrantLock stripeFor(String email) {
+        return stripes[stripeIndex(email)];
+    }
+
+    private int stripeIndex(String email) {
+        int h = email.hashCode();
+        return (h ^ (h >>> 16)) & (stripes.length - 1);
+    }
+
+    private void capture(Transaction transaction) throws SQLException {
+        try {
+            capture.append(transaction);
+        } catch (IOException e) {
+            throw new SQLException("Could not capture transaction: " + e.getMessage(), e);
+        }
+    }
+
+    private static boolean join(CompletableFuture<Boolean> future) throws SQLException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof SQLException sql) {
+                throw sql;
+            }
+            throw e;
+        }
+    }
+}
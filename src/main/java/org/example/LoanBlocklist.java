@@ -0,0 +1,118 @@
+package org.example;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The set of users with an overdue installment on an active loan, kept in
+ * memory so the check in front of every debit and credit is a hash lookup.
+ * A loan is overdue once its due_date, which follows the next unpaid
+ * installment, has passed: the due date itself is still a day to pay on.
+ *
+ * The whole set is rebuilt by a periodic sweep, which is also what picks up
+ * loans that become overdue as the date changes. Code that changes a loan
+ * calls {@link #refreshUser} so the user's entry is right immediately,
+ * without waiting for the next sweep.
+ */
+public class LoanBlocklist implements AutoCloseable {
+    static final String SWEEP_SQL = """
+            SELECT DISTINCT user_id FROM loans
+            WHERE status = 'active' AND due_date < ? AND outstanding_balance > 0
+            """;
+    static final String USER_SQL = """
+            SELECT 1 FROM loans
+            WHERE user_id = ? AND status = 'active' AND due_date < ? AND outstanding_balance > 0
+            LIMIT 1
+            """;
+
+    private final ConnectionManager connections;
+    private volatile Set<Integer> blocked = ConcurrentHashMap.newKeySet();
+    private ScheduledExecutorService sweeper;
+
+    public LoanBlocklist(ConnectionManager connections) {
+        this.connections = connections;
+    }
+
+    public boolean isBlocked(int userId) {
+        return blocked.contains(userId);
+    }
+
+    public int size() {
+        return blocked.size();
+    }
+
+    /**
+     * Rebuilds the whole set. Synchronized with refreshUser so a sweep that
+     * read the table before a loan changed cannot overwrite the newer entry.
+     */
+    public synchronized void refresh() throws SQLException {
+        Set<Integer> next = ConcurrentHashMap.newKeySet();
+        try (ConnectionManager.Lease lease = connections.reader()) {
+            PreparedStatement ps = lease.prepare(SWEEP_SQL);
+            ps.setString(1, LocalDate.now().toString());
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    next.add(rs.getInt(1));
+                }
+            }
+        }
+        blocked = next;
+    }
+
+    /**
+     * Re-checks one user after their loans changed.
+     */
+    public synchronized void refreshUser(int userId) throws SQLException {
+        boolean overdue;
+        try (ConnectionManager.Lease lease = connections.reader()) {
+            PreparedStatement ps = lease.prepare(USER_SQL);
+            ps.setInt(1, userId);
+            ps.setString(2, LocalDate.now().toString());
+            try (ResultSet rs = ps.executeQuery()) {
+                overdue = rs.next();
+            }
+        }
+        if (overdue) {
+            blocked.add(userId);
+        } else {
+            blocked.remove(userId);
+        }
+    }
+
+    /**
+     * Sweeps every period on a background thread. Call {@link #refresh}
+     * first so the set is filled before the first check.
+     */
+    public synchronized void start(long period, TimeUnit unit) {
+        if (sweeper != null) {
+            return;
+        }
+        sweeper = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "loan-blocklist");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleAtFixedRate(() -> {
+            try {
+                refresh();
+            } catch (SQLException e) {
+                System.out.println("Error refreshing loan blocklist: " + e.getMessage());
+            }
+        }, period, period, unit);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+            sweeper = null;
+        }
+    }
+}
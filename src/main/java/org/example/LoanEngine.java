@@ -0,0 +1,102 @@
+package org.example;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.List;
+
+/**
+ * Creates loans together with their full installment schedule.
+ *
+ * The schedule is worked out once, when the loan is created, so repayments
+ * ({@link RepaymentProcessor}) only walk the stored installments instead
+ * of recomputing them. loans.due_date is the due date of the next unpaid
+ * installment, starting with the first; it is what the overdue blocks and
+ * the reminders read.
+ */
+public class LoanEngine {
+    static final String INSERT_LOAN_SQL = """
+            INSERT INTO loans (user_id, principal_amount, interest_rate, repayment_period, outstanding_balance,
+                               status, created_at, due_date, method, next_installment)
+            VALUES (?, ?, ?, ?, ?, 'active', ?, ?, ?, 1)
+            """;
+    static final String INSERT_INSTALLMENT_SQL = """
+            INSERT INTO loan_installments (loan_id, number, due_date, principal, interest) VALUES (?, ?, ?, ?, ?)
+            """;
+    static final String BALANCE_SQL =
+            "SELECT COALESCE(SUM(outstanding_balance), 0) FROM loans WHERE user_id = ? AND status = 'active'";
+
+    private final ConnectionManager connections;
+
+    public LoanEngine(ConnectionManager connections) {
+        this.connections = connections;
+    }
+
+    /**
+     * Stores the loan and its schedule in one transaction and returns the loan id.
+     */
+    public long create(int userId, long principal, double annualRate, AmortizationMethod method,
+                       List<Installment> schedule) throws SQLException {
+        long total = 0;
+        for (Installment installment : schedule) {
+            total += installment.amount();
+        }
+
+        try (ConnectionManager.Lease lease = connections.writer()) {
+            Connection conn = lease.connection();
+            long[] loanId = new long[1];
+            long owed = total;
+            Migration.inTransaction(conn, c -> {
+                PreparedStatement loan = lease.prepare(INSERT_LOAN_SQL);
+                loan.setInt(1, userId);
+                loan.setLong(2, principal);
+                loan.setDouble(3, annualRate);
+                loan.setInt(4, schedule.size());
+                loan.setLong(5, owed);
+                loan.setTimestamp(6, new Timestamp(System.currentTimeMillis()));
+                loan.setString(7, schedule.get(0).dueDate().toString());
+                loan.setString(8, method.name());
+                loan.executeUpdate();
+
+                try (Statement stmt = c.createStatement();
+                     ResultSet rs = stmt.executeQuery("SELECT last_insert_rowid()")) {
+                    rs.next();
+                    loanId[0] = rs.getLong(1);
+                }
+
+                PreparedStatement insert = lease.prepare(INSERT_INSTALLMENT_SQL);
+                addInstallments(insert, loanId[0], schedule);
+                insert.executeBatch();
+            });
+            return loanId[0];
+        }
+    }
+
+    static void addInstallments(PreparedStatement insert, long loanId, List<Installment> schedule)
+            throws SQLException {
+        for (Installment installment : schedule) {
+            insert.setLong(1, loanId);
+            insert.setInt(2, installment.number());
+            insert.setString(3, installment.dueDate().toString());
+            insert.setLong(4, installment.principal());
+            insert.setLong(5, installment.interest());
+            insert.addBatch();
+        }
+    }
+
+    /**
+     * What the user still owes across all active loans, in cents.
+     */
+    public long outstanding(int userId) throws SQLException {
+        try (ConnectionManager.Lease lease = connections.reader()) {
+            PreparedStatement ps = lease.prepare(BALANCE_SQL);
+            ps.setInt(1, userId);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
+}
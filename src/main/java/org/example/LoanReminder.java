@@ -0,0 +1,14 @@
+package org.example;
+
+import java.time.LocalDate;
+
+/**
+ * A loan that falls due soon. The amount is the outstanding balance in cents.
+ */
+public record LoanReminder(long loanId, int userId, String email, LocalDate dueDate, long daysLeft, long amount) {
+
+    @Override
+    public String toString() {
+        return String.format("Reminder: RM %s loan is due on %s (in %d days).", Money.format(amount), dueDate, daysLeft);
+    }
+}
@@ -0,0 +1,108 @@
+package org.example;
+
+import java.io.IOException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Finds every active loan whose next unpaid installment (loans.due_date,
+ * see {@link LoanEngine}) falls due within the window, for all users at
+ * once, with one range read on idx_loans_status_due, and hands the
+ * reminders to each sink in batches as the rows stream in. A sweep that
+ * fails part way aborts every sink instead of ending it, so the scheduler
+ * can run the slot again without sinks keeping a partial or doubled sweep.
+ */
+public class LoanReminderEngine implements ScheduledJob {
+    static final String DUE_SQL = """
+            SELECT l.id, l.user_id, u.email, l.due_date, l.outstanding_balance
+            FROM loans l JOIN users u ON u.id = l.user_id
+            WHERE l.status = 'active' AND l.due_date >= ? AND l.due_date <= ?
+            ORDER BY l.due_date, l.id
+            """;
+    private static final int FETCH_SIZE = 1000;
+
+    private final ConnectionManager connections;
+    private final int windowDays;
+    private final int batchSize;
+    private final List<ReminderSink> sinks;
+
+    public LoanReminderEngine(ConnectionManager connections, int windowDays, int batchSize, List<ReminderSink> sinks) {
+        this.connections = connections;
+        this.windowDays = windowDays;
+        this.batchSize = batchSize;
+        this.sinks = sinks;
+    }
+
+    @Override
+    public void run(Context context) throws SQLException, IOException {
+        long sent = sweep(context.slot().toLocalDate());
+        System.out.println(sent + " loan reminder(s) sent for " + context.slot().toLocalDate());
+    }
+
+    /**
+     * Sends reminders for loans due between today and today + windowDays,
+     * both inclusive, and returns how many were sent.
+     */
+    public long sweep(LocalDate today) throws SQLException, IOException {
+        long sent;
+        try {
+            for (ReminderSink sink : sinks) {
+                sink.begin(today);
+            }
+            sent = stream(today);
+        } catch (SQLException | IOException | RuntimeException e) {
+            for (ReminderSink sink : sinks) {
+                try {
+                    sink.abort();
+                } catch (IOException | RuntimeException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+            }
+            throw e;
+        }
+        for (ReminderSink sink : sinks) {
+            sink.end();
+        }
+        return sent;
+    }
+
+    private long stream(LocalDate today) throws SQLException, IOException {
+        long sent = 0;
+        List<LoanReminder> batch = new ArrayList<>(batchSize);
+        try (ConnectionManager.Lease lease = connections.reader()) {
+            PreparedStatement ps = lease.prepare(DUE_SQL);
+            ps.setFetchSize(FETCH_SIZE);
+            ps.setString(1, today.toString());
+            ps.setString(2, today.plusDays(windowDays).toString());
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    LocalDate due = LocalDate.parse(rs.getString(4));
+                    batch.add(new LoanReminder(rs.getLong(1), rs.getInt(2), rs.getString(3), due,
+                            ChronoUnit.DAYS.between(today, due), rs.getLong(5)));
+                    if (batch.size() == batchSize) {
+                        deliver(batch);
+                        sent += batch.size();
+                        batch.clear();
+                    }
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            deliver(batch);
+            sent += batch.size();
+        }
+        return sent;
+    }
+
+    private void deliver(List<LoanReminder> batch) throws IOException {
+        List<LoanReminder> copy = List.copyOf(batch);
+        for (ReminderSink sink : sinks) {
+            sink.send(copy);
+        }
+    }
+}
@@ -1,16 +1,14 @@
 package org.example;
 
 
-import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.ResultSet;
+import java.nio.file.Path;
 import java.sql.SQLException;
-import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
 import java.util.Scanner;
+import java.util.concurrent.CompletionException;
 import java.util.regex.Pattern;
 
-import static org.example.DatabaseHandler.balance;
-
 
 public class Main {
     private static final Scanner scanner = new Scanner(System.in);
@@ -102,11 +100,14 @@ public class Main {
         }
 
 
-        if (db.userExists(email)) {
-            System.out.println("Email already registered!\n");
-        } else {
-            db.insertUser(name, email, password); // Use "name" not "username"
-            System.out.println("\nRegister Successful!!!\n");
+        try {
+            if (DatabaseHandler.auth.register(name, email, password).join()) {
+                System.out.println("\nRegister Successful!!!\n");
+            } else {
+                System.out.println("Email already registered!\n");
+            }
+        } catch (CompletionException e) {
+            System.out.println("Registration failed, please try again: " + e.getCause().getMessage());
         }
     }
 
@@ -123,18 +124,18 @@ public class Main {
 
 
     public static void showUserSummary() {
-        double balance = DatabaseHandler.balance;
-        double savings = db.getSavings(currentUserEmail);
-        double loan = db.getLoanBalance(currentUserEmail);
+        long balance = db.getBalance(currentUserEmail);
+        long savings = db.getSavings(currentUserEmail);
+        long loan = db.getLoanBalance(currentUserEmail);
         printUserSummary(currentUserEmail, balance, savings, loan);
     }
 
 
-    public static void printUserSummary(String name, double balance, double savings, double loan) {
+    public static void printUserSummary(String name, long balance, long savings, long loan) {
         System.out.println("== Welcome, " + name + " ==");
-        System.out.printf("Balance: %.2f\n", balance);
-        System.out.printf("Savings: %.2f\n", savings);
-        System.out.printf("Loan: %.2f\n", loan);
+        System.out.println("Balance: " + Money.format(balance));
+        System.out.println("Savings: " + Money.format(savings));
+        System.out.println("Loan: " + Money.format(loan));
     }
 
 
@@ -155,20 +156,28 @@ public class Main {
         String password = scanner.nextLine();
 
 
-        if (!db.userExists(email)) {
-            System.out.println("Email not registered!\n");
-        } else if (db.validateUser(email, password)) {
-            System.out.println("\nLogin Successful!!!\n");
-            currentUserEmail = email;
-            int userId = db.getUserId(currentUserEmail);
+        AuthService.LoginResult result;
+        try {
+            result = DatabaseHandler.auth.login(email, password).join();
+        } catch (CompletionException e) {
+            System.out.println("Login failed, please try again: " + e.getCause().getMessage());
+            return;
+        }
+
+
+        switch (result.status()) {
+            case UNKNOWN_USER -> System.out.println("Email not registered!\n");
+            case WRONG_PASSWORD -> System.out.println("Incorrect password!\n");
+            case SUCCESS -> {
+                System.out.println("\nLogin Successful!!!\n");
+                currentUserEmail = email;
 
 
-            db.checkLoanReminders(userId);
+                db.checkLoanReminders(result.userId());
 
 
-            transactionMenu();
-        } else {
-            System.out.println("Incorrect password!\n");
+                transactionMenu();
+            }
         }
     }
 
@@ -184,7 +193,7 @@ public class Main {
             Scanner input = new Scanner(System.in);
             int choice;
             while (true) {
-                printUserSummary(currentUserEmail, balance, balance, balance);
+                showUserSummary();
                 System.out.println("\n==Transaction Menu==");
                 System.out.println("== Transaction ==");
                 System.out.println("1.Debit");
@@ -207,15 +216,31 @@ public class Main {
                         System.out.println("1.View Transaction History");
                         System.out.println("2.Filter and Sort");
                         System.out.println("3.Export to CSV");
+                        System.out.println("4.Import Statement (CSV/OFX)");
+                        System.out.println("5.Balance as of Date");
+                        System.out.println("6.Spending Report");
                         System.out.print("> ");
                         int historyChoice = scanner.nextInt();
                         scanner.nextLine();
 
 
                         switch (historyChoice) {
-                            case 1 -> db.showHistory();
+                            case 1 -> db.showHistory(currentUserEmail, scanner);
                             case 2 -> filterHistory();
                             case 3 -> db.exportToCSV(currentUserEmail);
+                            case 4 -> {
+                                System.out.print("Path to statement file: ");
+                                db.importStatement(currentUserEmail, Path.of(scanner.nextLine().trim()));
+                            }
+                            case 5 -> {
+                                System.out.print("Date (YYYY-MM-DD): ");
+                                try {
+                                    db.showBalanceAsOf(currentUserEmail, LocalDate.parse(scanner.nextLine().trim()));
+                                } catch (DateTimeParseException e) {
+                                    System.out.println("Invalid date.");
+                                }
+                            }
+                            case 6 -> db.showSpendingReport(currentUserEmail);
                             default -> System.out.println("Invalid.");
                         }
                     }
@@ -224,7 +249,6 @@ public class Main {
                     case 6 -> depositInterestPredictor();
                     case 7 -> {
                         System.out.println("Logging out...");
-                        db.disconnectDatabase();
                         return;
                     }
                     default -> System.out.println("Feature under development or invalid choice.");
@@ -232,9 +256,6 @@ public class Main {
             }
 
 
-        } catch (SQLException e) {
-            System.err.println("Database error occurred.");
-            e.printStackTrace();
         } catch (Exception e) {
             System.err.println("An unexpected error occurred.");
             e.printStackTrace();
@@ -255,31 +276,33 @@ public class Main {
 
         System.out.println("==Debit==");
         System.out.print("Enter Debit Amount: ");
-        double amount = input.nextDouble();
-        input.nextLine();
-        System.out.print("Enter description: ");
-        String desc = input.nextLine();
-
-
-        if (amount <= 0 || amount > 1000000 || desc.length() > 100) {
+        long amount;
+        try {
+            amount = Money.parseCents(input.nextLine());
+        } catch (NumberFormatException | ArithmeticException e) {
             System.out.println("Invalid input.");
             return;
         }
+        System.out.print("Enter description: ");
+        String desc = input.nextLine();
 
 
-        if (amount > balance) {
-            System.out.println("Insufficient balance for this debit.");
+        // The balance check happens in the same statement as the insert, see LedgerService
+        LedgerService.Result result = db.debit(currentUserEmail, amount, desc);
+        if (result == null) {
             return;
         }
-
-
-        balance -= amount;
-        db.saveTransaction("Debit", amount, desc, currentUserEmail);
-
-
-        // Process savings deduction
-        db.processSavingsOnDebit(currentUserEmail, amount);
-        System.out.println("Debit successfully recorded! Current balance: " + balance);
+        switch (result.status()) {
+            case OK -> {
+                if (result.saved() > 0) {
+                    System.out.println("Moved " + Money.format(result.saved()) + " to savings.");
+                }
+                System.out.println("Debit successfully recorded! Current balance: " + Money.format(result.balance()));
+            }
+            case INSUFFICIENT_FUNDS -> System.out.println("Insufficient balance for this debit.");
+            case BLOCKED -> System.out.println("Cannot perform transactions - you have overdue loans!");
+            default -> System.out.println("Invalid input.");
+        }
     }
 
 
@@ -295,21 +318,26 @@ public class Main {
 
         System.out.println("==Credit==");
         System.out.print("Enter Credit Amount: ");
-        double amount = input.nextDouble();
-        input.nextLine();
+        long amount;
+        try {
+            amount = Money.parseCents(input.nextLine());
+        } catch (NumberFormatException | ArithmeticException e) {
+            System.out.println("Invalid input.");
+            return;
+        }
         System.out.print("Enter description: ");
         String desc = input.nextLine();
 
 
-        if (amount <= 0 || desc.length() > 100) {
-            System.out.println("Invalid input.");
+        LedgerService.Result result = db.credit(currentUserEmail, amount, desc);
+        if (result == null) {
             return;
         }
-
-
-        balance += amount;
-        db.saveTransaction("Credit", amount, desc, currentUserEmail);
-        System.out.println("Credit successfully recorded! Current balance: " + balance);
+        switch (result.status()) {
+            case OK -> System.out.println("Credit successfully recorded! Current balance: " + Money.format(result.balance()));
+            case BLOCKED -> System.out.println("Cannot perform transactions - you have overdue loans!");
+            default -> System.out.println("Invalid input.");
+        }
     }
 
 
@@ -343,6 +371,7 @@ public class Main {
         System.out.println("\n== Credit Loan ==");
         System.out.println("1. Apply for Loan");
         System.out.println("2. Make Loan Payment");
+        System.out.println("3. Process Payroll Repayment File");
         System.out.print("> ");
         int choice = scanner.nextInt();
         scanner.nextLine(); // consume newline
@@ -351,6 +380,10 @@ public class Main {
         switch (choice) {
             case 1 -> applyForLoan();
             case 2 -> repayLoan();
+            case 3 -> {
+                System.out.print("Path to repayment file (email,amount per line): ");
+                db.importPayrollRepayments(Path.of(scanner.nextLine().trim()), AllocationPolicy.OLDEST_FIRST);
+            }
             default -> System.out.println("Invalid choice.");
         }
     }
@@ -369,8 +402,7 @@ public class Main {
 
     private static void repayLoan() {
         System.out.println("\n== Repay Loan ==");
-        int userId = db.getUserId(currentUserEmail);
-        db.repayLoan(scanner, userId); // Using your existing method
+        db.repayLoan(scanner, currentUserEmail);
     }
 
 
@@ -378,76 +410,42 @@ public class Main {
 
     public static void depositInterestPredictor() {
         System.out.println("==Deposit Interest Predictor==");
-        Scanner scanner = new Scanner(System.in);
         System.out.print("Enter deposit amount: ");
-        double deposit = scanner.nextDouble();
-
-
-        if (deposit <= 0) {
-            System.out.println("Deposit amount must be positive.");
+        long deposit;
+        int months;
+        try {
+            deposit = Money.parseCents(scanner.nextLine());
+            System.out.print("Enter term in months: ");
+            months = Integer.parseInt(scanner.nextLine().trim());
+        } catch (NumberFormatException | ArithmeticException e) {
+            System.out.println("Invalid input.");
             return;
         }
 
 
-        System.out.println("Choose Bank: ");
-        System.out.println("1. RHB (2.6%)");
-        System.out.println("2. Maybank (2.5%)");
-        System.out.println("3. Hong Leong (2.3%)");
-        System.out.println("4. Alliance (2.85%)");
-        System.out.println("5. AmBank (2.55%)");
-        System.out.println("6. Standard Chartered (2.65%)");
-        int bank = scanner.nextInt();
-        double rate;
-
-
-        switch (bank) {
-            case 1:
-                rate = 2.6;
-                break;
-            case 2:
-                rate = 2.5;
-                break;
-            case 3:
-                rate = 2.3;
-                break;
-            case 4:
-                rate = 2.85;
-                break;
-            case 5:
-                rate = 2.55;
-                break;
-            case 6:
-                rate = 2.65;
-                break;
-            default:
-                System.out.println("Invalid");
-                return;
+        if (deposit <= 0 || months < 1) {
+            System.out.println("Deposit amount and term must be positive.");
+            return;
         }
 
 
-        double interestRate = (deposit * rate) / 12 / 100;
-        System.out.printf("Monthly interest earned: %.2f\n", interestRate);
+        db.showDepositProjection(deposit, months);
     }
 
 
-    static void filterHistory() throws SQLException {
-        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:users.db");
-             Statement stmt = conn.createStatement()) {
-
-
-            StringBuilder query = new StringBuilder("SELECT * FROM transactions WHERE 1=1");
-            boolean hasFilter = false;
+    static void filterHistory() {
+        try {
+            HistoryQuery query = HistoryQuery.forUser(currentUserEmail);
 
 
             // Filter: Date Range
             System.out.print("Filter by date range? (Y/N): ");
             if (scanner.nextLine().trim().equalsIgnoreCase("Y")) {
                 System.out.print("Start date (YYYY-MM-DD): ");
-                String startDate = scanner.nextLine().trim();
+                LocalDate startDate = LocalDate.parse(scanner.nextLine().trim());
                 System.out.print("End date (YYYY-MM-DD): ");
-                String endDate = scanner.nextLine().trim();
-                query.append(" AND DATE(timestamp) BETWEEN '").append(startDate).append("' AND '").append(endDate).append("'");
-                hasFilter = true;
+                LocalDate endDate = LocalDate.parse(scanner.nextLine().trim());
+                query.between(startDate, endDate);
             }
 
 
@@ -455,9 +453,7 @@ public class Main {
             System.out.print("Filter by transaction type (debit/credit)? (Y/N): ");
             if (scanner.nextLine().trim().equalsIgnoreCase("Y")) {
                 System.out.print("Enter type (Debit/Credit): ");
-                String type = scanner.nextLine().trim();
-                query.append(" AND type = '").append(type).append("'");
-                hasFilter = true;
+                query.type(scanner.nextLine().trim());
             }
 
 
@@ -465,11 +461,10 @@ public class Main {
             System.out.print("Filter by amount range? (Y/N): ");
             if (scanner.nextLine().trim().equalsIgnoreCase("Y")) {
                 System.out.print("Minimum amount: ");
-                double min = Double.parseDouble(scanner.nextLine().trim());
+                long min = Money.parseCents(scanner.nextLine());
                 System.out.print("Maximum amount: ");
-                double max = Double.parseDouble(scanner.nextLine().trim());
-                query.append(" AND amount BETWEEN ").append(min).append(" AND ").append(max);
-                hasFilter = true;
+                long max = Money.parseCents(scanner.nextLine());
+                query.amountBetween(min, max);
             }
 
 
@@ -479,27 +474,24 @@ public class Main {
                 System.out.print("Sort by (date/amount): ");
                 String field = scanner.nextLine().trim().toLowerCase();
                 System.out.print("Order (asc/desc): ");
-                String order = scanner.nextLine().trim().toUpperCase();
+                boolean descending = scanner.nextLine().trim().equalsIgnoreCase("desc");
                 if (field.equals("date")) {
-                    query.append(" ORDER BY timestamp ").append(order);
+                    query.sortBy(HistoryQuery.SortField.DATE, descending);
                 } else if (field.equals("amount")) {
-                    query.append(" ORDER BY amount ").append(order);
+                    query.sortBy(HistoryQuery.SortField.AMOUNT, descending);
                 }
             }
 
 
-            try (ResultSet rs = stmt.executeQuery(query.toString())) {
-                System.out.println("ID | Type   | Amount  | Description | Date");
-                System.out.println("------------------------------------------------------------");
-                while (rs.next()) {
-                    System.out.printf("%-2d | %-6s | %7.2f | %-12s | %s%n",
-                            rs.getInt("id"),
-                            rs.getString("type"),
-                            rs.getDouble("amount"),
-                            rs.getString("description"),
-                            rs.getString("timestamp"));
-                }
-            }
+            System.out.println("ID | Type   | Amount  | Description | Date");
+            System.out.println("------------------------------------------------------------");
+            query.forEach(DatabaseHandler.connections, entry ->
+                    System.out.printf("%-2d | %-6s | %7s | %-12s | %s%n",
+                            entry.id(),
+                            entry.type(),
+                            Money.format(entry.amount()),
+                            entry.description(),
+                            entry.timestamp()));
 
 
         } catch (Exception e) {
@@ -0,0 +1,53 @@
+package org.example;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * One versioned schema change. Steps must be idempotent: if the process
+ * dies after a step ran but before its version was recorded, the step runs
+ * again on the next start.
+ */
+public record Migration(int version, String description, Step step) {
+
+    @FunctionalInterface
+    public interface Step {
+        void apply(ConnectionManager connections) throws SQLException;
+    }
+
+    /**
+     * A migration made of plain SQL statements, run together in one transaction.
+     */
+    public static Migration sql(int version, String description, String... statements) {
+        return new Migration(version, description, connections -> {
+            try (ConnectionManager.Lease lease = connections.writer()) {
+                inTransaction(lease.connection(), conn -> {
+                    try (Statement stmt = conn.createStatement()) {
+                        for (String sql : statements) {
+                            stmt.executeUpdate(sql);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    @FunctionalInterface
+    interface Work {
+        void run(Connection conn) throws SQLException;
+    }
+
+    static void inTransaction(Connection conn, Work work) throws SQLException {
+        conn.setAutoCommit(false);
+        try {
+            work.run(conn);
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+}
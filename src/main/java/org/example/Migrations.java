@@ -0,0 +1,778 @@
+package org.example;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+/**
+ * The ordered list of schema migrations. Append new versions at the end,
+ * never edit one that has shipped.
+ */
+final class Migrations {
+
+    private Migrations() {
+    }
+
+    static List<Migration> all() {
+        return List.of(
+                Migration.sql(1, "baseline tables",
+                        """
+                        CREATE TABLE IF NOT EXISTS users (
+                            id INTEGER PRIMARY KEY AUTOINCREMENT,
+                            name TEXT NOT NULL,
+                            email TEXT NOT NULL UNIQUE,
+                            password TEXT NOT NULL
+                        )
+                        """,
+                        """
+                        CREATE TABLE IF NOT EXISTS transactions (
+                            id INTEGER PRIMARY KEY AUTOINCREMENT,
+                            type TEXT NOT NULL,
+                            amount REAL NOT NULL,
+                            description TEXT NOT NULL,
+                            user_email TEXT NOT NULL,
+                            timestamp DATETIME DEFAULT CURRENT_TIMESTAMP,
+                            FOREIGN KEY (user_email) REFERENCES users(email)
+                        )
+                        """,
+                        """
+                        CREATE TABLE IF NOT EXISTS loans (
+                            id INTEGER PRIMARY KEY AUTOINCREMENT,
+                            user_id INTEGER NOT NULL,
+                            principal_amount REAL NOT NULL,
+                            interest_rate REAL NOT NULL,
+                            repayment_period INTEGER NOT NULL,
+                            outstanding_balance REAL NOT NULL,
+                            status TEXT NOT NULL,
+                            created_at DATETIME,
+                            FOREIGN KEY (user_id) REFERENCES users(id)
+                        )
+                        """,
+                        """
+                        CREATE TABLE IF NOT EXISTS savings (
+                            id INTEGER PRIMARY KEY AUTOINCREMENT,
+                            user_email TEXT NOT NULL,
+                            amount REAL NOT NULL,
+                            timestamp DATETIME DEFAULT CURRENT_TIMESTAMP,
+                            FOREIGN KEY (user_email) REFERENCES users(email)
+                        )
+                        """),
+
+                new Migration(2, "per-user balances", Migrations::createBalanceTable),
+
+                // Every hot query filters on these columns; QueryPlanAudit checks that the plans use them
+                Migration.sql(3, "secondary indexes",
+                        // user history and exports: equality on user, range on timestamp, rowid breaks ties
+                        "CREATE INDEX IF NOT EXISTS idx_transactions_user_time ON transactions(user_email, timestamp)",
+                        // filter by type within a user's date range
+                        "CREATE INDEX IF NOT EXISTS idx_transactions_user_type_time ON transactions(user_email, type, timestamp)",
+                        // covers the loan reminder query without touching the table
+                        """
+                        CREATE INDEX IF NOT EXISTS idx_loans_user_status
+                        ON loans(user_id, status, created_at, repayment_period, outstanding_balance)
+                        """,
+                        "CREATE INDEX IF NOT EXISTS idx_savings_user ON savings(user_email)"),
+
+                new Migration(4, "savings: percentage and balance columns", Migrations::rebuildSavings),
+
+                new Migration(5, "money as INTEGER cents", Migrations::convertMoneyToCents),
+
+                // Keyset pagination in TransactionHistory seeks on (user_email, id)
+                Migration.sql(6, "history paging index",
+                        "CREATE INDEX IF NOT EXISTS idx_transactions_user_id ON transactions(user_email, id)"),
+
+                new Migration(7, "loans: persisted due_date", Migrations::addLoanDueDate),
+
+                // One row per month the savings job has run for; last_savings_id is its resume point
+                Migration.sql(8, "savings transfer checkpoints",
+                        """
+                        CREATE TABLE IF NOT EXISTS savings_transfer_runs (
+                            period TEXT PRIMARY KEY,
+                            last_savings_id INTEGER NOT NULL DEFAULT 0,
+                            users_processed INTEGER NOT NULL DEFAULT 0,
+                            transfers INTEGER NOT NULL DEFAULT 0,
+                            amount_transferred INTEGER NOT NULL DEFAULT 0,
+                            started_at DATETIME DEFAULT CURRENT_TIMESTAMP,
+                            finished_at DATETIME
+                        )
+                        """),
+
+                // JobScheduler claims a (job, slot) by inserting its row, which makes runs exactly-once
+                Migration.sql(9, "scheduled job runs",
+                        """
+                        CREATE TABLE IF NOT EXISTS job_runs (
+                            job TEXT NOT NULL,
+                            slot TEXT NOT NULL,
+                            status TEXT NOT NULL,
+                            attempts INTEGER NOT NULL DEFAULT 0,
+                            checkpoint INTEGER NOT NULL DEFAULT 0,
+                            started_at DATETIME,
+                            finished_at DATETIME,
+                            duration_ms INTEGER,
+                            error TEXT,
+                            PRIMARY KEY (job, slot)
+                        )
+                        """,
+                        "CREATE INDEX IF NOT EXISTS idx_job_runs_status ON job_runs(status)"),
+
+                new Migration(10, "loan installment schedules", Migrations::createLoanInstallments),
+
+                new Migration(11, "loans: part-paid installment credit", Migrations::addInstallmentCredit),
+
+                // Annual rates in percent; a product applies to deposits of at least min_deposit cents
+                Migration.sql(12, "deposit rate table",
+                        """
+                        CREATE TABLE IF NOT EXISTS deposit_rates (
+                            bank TEXT NOT NULL,
+                            min_deposit INTEGER NOT NULL DEFAULT 0,
+                            annual_rate REAL NOT NULL,
+                            PRIMARY KEY (bank, min_deposit)
+                        )
+                        """,
+                        """
+                        INSERT OR IGNORE INTO deposit_rates (bank, min_deposit, annual_rate) VALUES
+                            ('RHB', 0, 2.6),
+                            ('Maybank', 0, 2.5),
+                            ('Hong Leong', 0, 2.3),
+                            ('Alliance', 0, 2.85),
+                            ('AmBank', 0, 2.55),
+                            ('Standard Chartered', 0, 2.65)
+                        """),
+
+                new Migration(13, "double-entry journal and balance snapshots", Migrations::createJournal),
+
+                // Last capture log sequence applied to transactions; see CaptureLog
+                Migration.sql(14, "capture log checkpoint",
+                        """
+                        CREATE TABLE IF NOT EXISTS capture_checkpoint (
+                            id INTEGER PRIMARY KEY CHECK (id = 1),
+                            last_seq INTEGER NOT NULL
+                        )
+                        """,
+                        "INSERT OR IGNORE INTO capture_checkpoint (id, last_seq) VALUES (1, 0)"),
+
+                new Migration(15, "description dictionary and categories", Migrations::createDescriptionDictionary),
+
+                // due_date held the final installment's date, so missed installments went unnoticed until then
+                Migration.sql(16, "loans: due_date of the next unpaid installment",
+                        """
+                        UPDATE loans
+                        SET due_date = (SELECT i.due_date FROM loan_installments i
+                                        WHERE i.loan_id = loans.id AND i.number = loans.next_installment)
+                        WHERE status = 'active'
+                        AND EXISTS (SELECT 1 FROM loan_installments i
+                                    WHERE i.loan_id = loans.id AND i.number = loans.next_installment)
+                        """),
+
+                // Writers keep one compiled KeywordCategorizer and recompile it when this moves
+                Migration.sql(17, "category_rules: change counter",
+                        """
+                        CREATE TABLE IF NOT EXISTS category_rules_version (
+                            id INTEGER PRIMARY KEY CHECK (id = 1),
+                            version INTEGER NOT NULL
+                        )
+                        """,
+                        "INSERT OR IGNORE INTO category_rules_version (id, version) VALUES (1, 0)",
+                        """
+                        CREATE TRIGGER IF NOT EXISTS category_rules_insert_version AFTER INSERT ON category_rules
+                        BEGIN
+                            UPDATE category_rules_version SET version = version + 1 WHERE id = 1;
+                        END
+                        """,
+                        """
+                        CREATE TRIGGER IF NOT EXISTS category_rules_update_version AFTER UPDATE ON category_rules
+                        BEGIN
+                            UPDATE category_rules_version SET version = version + 1 WHERE id = 1;
+                        END
+                        """,
+                        """
+                        CREATE TRIGGER IF NOT EXISTS category_rules_delete_version AFTER DELETE ON category_rules
+                        BEGIN
+                            UPDATE category_rules_version SET version = version + 1 WHERE id = 1;
+                        END
+                        """),
+
+                new Migration(18, "loan_payments: loan of each repayment debit", Migrations::createLoanPayments),
+
+                // The old repayLoan wrote 'debit', which type filters comparing against 'Debit' never matched
+                Migration.sql(19, "transactions: one spelling of Debit",
+                        "UPDATE transactions SET type = 'Debit' WHERE type <> 'Debit' AND lower(type) = 'debit'")
+        );
+    }
+
+    /**
+     * Per-user running balance, kept up to date by a trigger on every insert
+     * into transactions, so it commits together with the row that changed it.
+     * History is summed once, when the table is first created.
+     */
+    private static void createBalanceTable(ConnectionManager connections) throws SQLException {
+        try (ConnectionManager.Lease lease = connections.writer()) {
+            Connection conn = lease.connection();
+            boolean exists;
+            try (ResultSet rs = conn.getMetaData().getTables(null, null, "account_balances", null)) {
+                exists = rs.next();
+            }
+            if (exists) {
+                return;
+            }
+
+            Migration.inTransaction(conn, c -> {
+                try (Statement stmt = c.createStatement()) {
+                    stmt.executeUpdate("""
+                        CREATE TABLE account_balances (
+                            user_email TEXT PRIMARY KEY,
+                            balance REAL NOT NULL DEFAULT 0,
+                            FOREIGN KEY (user_email) REFERENCES users(email)
+                        );
+                        """);
+
+                    stmt.executeUpdate("""
+                        INSERT INTO account_balances(user_email, balance)
+                        SELECT user_email, SUM(CASE WHEN type='Credit' THEN amount ELSE -amount END)
+                        FROM transactions
+                        GROUP BY user_email
+                        """);
+
+                    stmt.executeUpdate("""
+                        CREATE TRIGGER transactions_update_balance
+                        AFTER INSERT ON transactions
+                        BEGIN
+                            INSERT INTO account_balances(user_email, balance)
+                            VALUES (NEW.user_email, CASE WHEN NEW.type='Credit' THEN NEW.amount ELSE -NEW.amount END)
+                            ON CONFLICT(user_email) DO UPDATE SET balance = balance + excluded.balance;
+                        END;
+                        """);
+                }
+            });
+        }
+    }
+
+    /**
+     * The savings code expected a balance per saver, but the table only ever
+     * had the deduction percentage (in a column called amount). Rebuild it
+     * with one row per user, the percentage and the saved balance.
+     *
+     * The old code updated all of a user's rows together, so duplicates
+     * (left by racing inserts) carry the same percentage. All but the newest
+     * are deleted before the copy, and counted, instead of failing the
+     * rebuild on the new UNIQUE constraint.
+     */
+    private static void rebuildSavings(ConnectionManager connections) throws SQLException {
+        try (ConnectionManager.Lease lease = connections.writer()) {
+            if (TableRebuild.hasColumn(lease.connection(), "savings", "percentage")) {
+                return;
+            }
+            try (Statement stmt = lease.connection().createStatement()) {
+                int merged = stmt.executeUpdate(
+                        "DELETE FROM savings WHERE id NOT IN (SELECT MAX(id) FROM savings GROUP BY user_email)");
+                if (merged > 0) {
+                    System.out.println("Merged " + merged + " duplicate savings rows into the newest row per user");
+                }
+            }
+        }
+
+        new TableRebuild("savings",
+                """
+                CREATE TABLE %s (
+                    id INTEGER PRIMARY KEY AUTOINCREMENT,
+                    user_email TEXT NOT NULL UNIQUE,
+                    percentage REAL NOT NULL,
+                    balance REAL NOT NULL DEFAULT 0,
+                    timestamp DATETIME DEFAULT CURRENT_TIMESTAMP,
+                    FOREIGN KEY (user_email) REFERENCES users(email)
+                )
+                """,
+                "id, user_email, amount, 0, timestamp",
+                List.of(),      // the UNIQUE constraint replaces idx_savings_user
+                10_000
+        ).run(connections);
+    }
+
+    /**
+     * Every money column goes from REAL units to INTEGER cents. Each table is
+     * rebuilt online. account_balances is re-summed from the converted rows
+     * inside the transactions swap, together with the trigger that feeds it,
+     * so balances match the per-row rounding and never mix units.
+     */
+    private static void convertMoneyToCents(ConnectionManager connections) throws SQLException {
+        if (!isInteger(connections, "transactions", "amount")) {
+            moveUnownedTransactions(connections);
+            new TableRebuild("transactions",
+                    """
+                    CREATE TABLE %s (
+                        id INTEGER PRIMARY KEY AUTOINCREMENT,
+                        type TEXT NOT NULL,
+                        amount INTEGER NOT NULL,
+                        description TEXT NOT NULL,
+                        user_email TEXT NOT NULL,
+                        timestamp DATETIME DEFAULT CURRENT_TIMESTAMP,
+                        FOREIGN KEY (user_email) REFERENCES users(email)
+                    )
+                    """,
+                    "id, type, CAST(ROUND(amount * 100) AS INTEGER), description, user_email, timestamp",
+                    List.of(
+                            "CREATE INDEX IF NOT EXISTS idx_transactions_user_time ON transactions(user_email, timestamp)",
+                            "CREATE INDEX IF NOT EXISTS idx_transactions_user_type_time ON transactions(user_email, type, timestamp)",
+                            """
+                            CREATE TABLE account_balances_cents (
+                                user_email TEXT PRIMARY KEY,
+                                balance INTEGER NOT NULL DEFAULT 0,
+                                FOREIGN KEY (user_email) REFERENCES users(email)
+                            )
+                            """,
+                            """
+                            INSERT INTO account_balances_cents(user_email, balance)
+                            SELECT user_email, SUM(CASE WHEN type='Credit' THEN amount ELSE -amount END)
+                            FROM transactions
+                            GROUP BY user_email
+                            """,
+                            "DROP TABLE account_balances",
+                            "ALTER TABLE account_balances_cents RENAME TO account_balances",
+                            """
+                            CREATE TRIGGER transactions_update_balance
+                            AFTER INSERT ON transactions
+                            BEGIN
+                                INSERT INTO account_balances(user_email, balance)
+                                VALUES (NEW.user_email, CASE WHEN NEW.type='Credit' THEN NEW.amount ELSE -NEW.amount END)
+                                ON CONFLICT(user_email) DO UPDATE SET balance = balance + excluded.balance;
+                            END
+                            """),
+                    10_000
+            ).run(connections);
+        }
+
+        if (!isInteger(connections, "loans", "outstanding_balance")) {
+            new TableRebuild("loans",
+                    """
+                    CREATE TABLE %s (
+                        id INTEGER PRIMARY KEY AUTOINCREMENT,
+                        user_id INTEGER NOT NULL,
+                        principal_amount INTEGER NOT NULL,
+                        interest_rate REAL NOT NULL,
+                        repayment_period INTEGER NOT NULL,
+                        outstanding_balance INTEGER NOT NULL,
+                        status TEXT NOT NULL,
+                        created_at DATETIME,
+                        FOREIGN KEY (user_id) REFERENCES users(id)
+                    )
+                    """,
+                    "id, user_id, CAST(ROUND(principal_amount * 100) AS INTEGER), interest_rate, repayment_period, "
+                            + "CAST(ROUND(outstanding_balance * 100) AS INTEGER), status, created_at",
+                    List.of("""
+                            CREATE INDEX IF NOT EXISTS idx_loans_user_status
+                            ON loans(user_id, status, created_at, repayment_period, outstanding_balance)
+                            """),
+                    10_000
+            ).run(connections);
+        }
+
+        if (!isInteger(connections, "savings", "balance")) {
+            new TableRebuild("savings",
+                    """
+                    CREATE TABLE %s (
+                        id INTEGER PRIMARY KEY AUTOINCREMENT,
+                        user_email TEXT NOT NULL UNIQUE,
+                        percentage REAL NOT NULL,
+                        balance INTEGER NOT NULL DEFAULT 0,
+                        timestamp DATETIME DEFAULT CURRENT_TIMESTAMP,
+                        FOREIGN KEY (user_email) REFERENCES users(email)
+                    )
+                    """,
+                    "id, user_email, percentage, CAST(ROUND(balance * 100) AS INTEGER), timestamp",
+                    List.of(),
+                    10_000
+            ).run(connections);
+        }
+    }
+
+    /**
+     * The due date was recomputed from created_at and repayment_period on
+     * every check, in SQL that could not use an index. Store it once, as
+     * 'YYYY-MM-DD' so it compares as text, and index it for the overdue sweep.
+     */
+    private static void addLoanDueDate(ConnectionManager connections) throws SQLException {
+        try (ConnectionManager.Lease lease = connections.writer()) {
+            Migration.inTransaction(lease.connection(), conn -> {
+                try (Statement stmt = conn.createStatement()) {
+                    if (!TableRebuild.hasColumn(conn, "loans", "due_date")) {
+                        stmt.executeUpdate("ALTER TABLE loans ADD COLUMN due_date TEXT");
+                    }
+                    // setTimestamp stored created_at as epoch millis; older rows may hold text dates
+                    stmt.executeUpdate("""
+                        UPDATE loans SET due_date = date(
+                            CASE typeof(created_at)
+                                WHEN 'integer' THEN datetime(created_at / 1000, 'unixepoch', 'localtime')
+                                ELSE created_at
+                            END,
+                            '+' || repayment_period || ' months')
+                        WHERE due_date IS NULL
+                        """);
+                    stmt.executeUpdate("CREATE INDEX IF NOT EXISTS idx_loans_status_due ON loans(status, due_date)");
+                }
+            });
+        }
+    }
+
+    /**
+     * Loans get a stored repayment schedule and a pointer to the next unpaid
+     * installment. Active loans from before schedules existed are given one
+     * interest-free installment per remaining month, ending on their due
+     * date and adding up to exactly what is still owed.
+     */
+    private static void createLoanInstallments(ConnectionManager connections) throws SQLException {
+        try (ConnectionManager.Lease lease = connections.writer()) {
+            Migration.inTransaction(lease.connection(), conn -> {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.executeUpdate("""
+                        CREATE TABLE IF NOT EXISTS loan_installments (
+                            loan_id INTEGER NOT NULL,
+                            number INTEGER NOT NULL,
+                            due_date TEXT NOT NULL,
+                            principal INTEGER NOT NULL,
+                            interest INTEGER NOT NULL,
+                            paid_at DATETIME,
+                            PRIMARY KEY (loan_id, number),
+                            FOREIGN KEY (loan_id) REFERENCES loans(id)
+                        ) WITHOUT ROWID
+                        """);
+                    if (!TableRebuild.hasColumn(conn, "loans", "method")) {
+                        stmt.executeUpdate("ALTER TABLE loans ADD COLUMN method TEXT NOT NULL DEFAULT 'FLAT'");
+                    }
+                    if (!TableRebuild.hasColumn(conn, "loans", "next_installment")) {
+                        stmt.executeUpdate("ALTER TABLE loans ADD COLUMN next_installment INTEGER NOT NULL DEFAULT 1");
+                    }
+                }
+
+                LocalDate today = LocalDate.now();
+                try (Statement select = conn.createStatement();
+                     ResultSet rs = select.executeQuery("""
+                         SELECT id, outstanding_balance, due_date FROM loans
+                         WHERE status = 'active'
+                         AND NOT EXISTS (SELECT 1 FROM loan_installments i WHERE i.loan_id = loans.id)
+                         """);
+                     PreparedStatement insert = conn.prepareStatement(LoanEngine.INSERT_INSTALLMENT_SQL)) {
+                    while (rs.next()) {
+                        long loanId = rs.getLong(1);
+                        LocalDate due = LocalDate.parse(rs.getString(3));
+                        int remaining = (int) Math.max(1, ChronoUnit.MONTHS.between(today, due) + 1);
+                        List<Installment> schedule = Amortization.schedule(AmortizationMethod.FLAT, rs.getLong(2), 0,
+                                remaining, due.minusMonths(remaining));
+                        LoanEngine.addInstallments(insert, loanId, schedule);
+                    }
+                    insert.executeBatch();
+                }
+            });
+        }
+    }
+
+    /**
+     * What has already been paid towards a loan's next installment, so a
+     * repayment smaller than the installment is kept rather than rounded away.
+     */
+    private static void addInstallmentCredit(ConnectionManager connections) throws SQLException {
+        try (ConnectionManager.Lease lease = connections.writer()) {
+            Migration.inTransaction(lease.connection(), conn -> {
+                if (!TableRebuild.hasColumn(conn, "loans", "installment_credit")) {
+                    try (Statement stmt = conn.createStatement()) {
+                        stmt.executeUpdate("ALTER TABLE loans ADD COLUMN installment_credit INTEGER NOT NULL DEFAULT 0");
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Every transaction becomes two postings that sum to zero: one on the
+     * user's account and the opposite one on the external account. Postings
+     * are append-only. A snapshot holds an account's balance from postings
+     * dated before as_of; a backdated transaction corrects the snapshots
+     * after it in the same trigger, so snapshots never go stale.
+     */
+    private static void createJournal(ConnectionManager connections) throws SQLException {
+        try (ConnectionManager.Lease lease = connections.writer()) {
+            Migration.inTransaction(lease.connection(), conn -> {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.executeUpdate("""
+                        CREATE TABLE IF NOT EXISTS journal_postings (
+                            id INTEGER PRIMARY KEY,
+                            transaction_id INTEGER NOT NULL,
+                            account TEXT NOT NULL,
+                            amount INTEGER NOT NULL,
+                            posted_at TEXT NOT NULL
+                        )
+                        """);
+                    stmt.executeUpdate("""
+                        CREATE TABLE IF NOT EXISTS balance_snapshots (
+                            account TEXT NOT NULL,
+                            as_of TEXT NOT NULL,
+                            balance INTEGER NOT NULL,
+                            PRIMARY KEY (account, as_of)
+                        ) WITHOUT ROWID
+                        """);
+
+                    boolean empty;
+                    try (ResultSet rs = stmt.executeQuery("SELECT NOT EXISTS (SELECT 1 FROM journal_postings)")) {
+                        empty = rs.next() && rs.getBoolean(1);
+                    }
+                    if (empty) {
+                        // Side 0 is the user's account, side 1 the external one
+                        stmt.executeUpdate(String.format("""
+                            INSERT INTO journal_postings (transaction_id, account, amount, posted_at)
+                            SELECT t.id,
+                                   CASE WHEN p.side = 0 THEN t.user_email ELSE '%s' END,
+                                   CASE WHEN (t.type = 'Credit') = (p.side = 0) THEN t.amount ELSE -t.amount END,
+                                   COALESCE(t.timestamp, CURRENT_TIMESTAMP)
+                            FROM transactions t CROSS JOIN (SELECT 0 AS side UNION ALL SELECT 1) p
+                            ORDER BY t.id, p.side
+                            """, Journal.EXTERNAL_ACCOUNT));
+                    }
+                    stmt.executeUpdate("""
+                        CREATE INDEX IF NOT EXISTS idx_journal_account_time
+                        ON journal_postings(account, posted_at, amount)
+                        """);
+
+                    stmt.executeUpdate("DROP TRIGGER IF EXISTS transactions_journal");
+                    stmt.executeUpdate(String.format("""
+                        CREATE TRIGGER transactions_journal
+                        AFTER INSERT ON transactions
+                        BEGIN
+                            INSERT INTO journal_postings (transaction_id, account, amount, posted_at)
+                            VALUES (NEW.id, NEW.user_email,
+                                    CASE WHEN NEW.type = 'Credit' THEN NEW.amount ELSE -NEW.amount END,
+                                    COALESCE(NEW.timestamp, CURRENT_TIMESTAMP)),
+                                   (NEW.id, '%1$s',
+                                    CASE WHEN NEW.type = 'Credit' THEN -NEW.amount ELSE NEW.amount END,
+                                    COALESCE(NEW.timestamp, CURRENT_TIMESTAMP));
+                            UPDATE balance_snapshots
+                            SET balance = balance + CASE WHEN NEW.type = 'Credit' THEN NEW.amount ELSE -NEW.amount END
+                            WHERE account = NEW.user_email AND as_of > COALESCE(NEW.timestamp, CURRENT_TIMESTAMP);
+                            UPDATE balance_snapshots
+                            SET balance = balance + CASE WHEN NEW.type = 'Credit' THEN -NEW.amount ELSE NEW.amount END
+                            WHERE account = '%1$s' AND as_of > COALESCE(NEW.timestamp, CURRENT_TIMESTAMP);
+                        END
+                        """, Journal.EXTERNAL_ACCOUNT));
+
+                    stmt.executeUpdate("""
+                        CREATE TRIGGER IF NOT EXISTS journal_postings_no_update
+                        BEFORE UPDATE ON journal_postings
+                        BEGIN
+                            SELECT RAISE(ABORT, 'journal_postings is append-only');
+                        END
+                        """);
+                    stmt.executeUpdate("""
+                        CREATE TRIGGER IF NOT EXISTS journal_postings_no_delete
+                        BEFORE DELETE ON journal_postings
+                        BEGIN
+                            SELECT RAISE(ABORT, 'journal_postings is append-only');
+                        END
+                        """);
+                }
+            });
+        }
+    }
+
+    /**
+     * Rows written before transactions had a user_email column have none,
+     * and nothing records whose they were. The new table requires an owner,
+     * so they are moved, unchanged, to transactions_unowned before the copy
+     * and reported, instead of being given a made-up owner or dropped.
+     */
+    private static void moveUnownedTransactions(ConnectionManager connections) throws SQLException {
+        try (ConnectionManager.Lease lease = connections.writer()) {
+            Migration.inTransaction(lease.connection(), conn -> {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.executeUpdate("""
+                        CREATE TABLE IF NOT EXISTS transactions_unowned (
+                            id INTEGER PRIMARY KEY,
+                            type TEXT NOT NULL,
+                            amount REAL NOT NULL,
+                            description TEXT,
+                            user_email TEXT,
+                            timestamp DATETIME
+                        )
+                        """);
+                    int moved = stmt.executeUpdate("""
+                        INSERT INTO transactions_unowned (id, type, amount, description, user_email, timestamp)
+                        SELECT id, type, amount, description, user_email, timestamp
+                        FROM transactions
+                        WHERE user_email IS NULL
+                        """);
+                    stmt.executeUpdate("DELETE FROM transactions WHERE user_email IS NULL");
+                    if (moved > 0) {
+                        System.out.println("Moved " + moved + " transactions without an owner to transactions_unowned");
+                    }
+                }
+            });
+        }
+    }
+
+    private static boolean isInteger(ConnectionManager connections, String table, String column) throws SQLException {
+        try (ConnectionManager.Lease lease = connections.writer();
+             PreparedStatement ps = lease.connection().prepareStatement(
+                     "SELECT type FROM pragma_table_info(?) WHERE name = ?")) {
+            ps.setString(1, table);
+            ps.setString(2, column);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() && rs.getString(1).equalsIgnoreCase("INTEGER");
+            }
+        }
+    }
+
+    /**
+     * Each distinct description is stored once in descriptions, with the
+     * category its keywords put it in, and transactions refer to it by id.
+     * Rows are tagged by the insert statements when their description is
+     * already known and by {@link DescriptionBackfillJob} otherwise; the
+     * partial index holds only the rows still waiting for it.
+     */
+    private static void createDescriptionDictionary(ConnectionManager connections) throws SQLException {
+        try (ConnectionManager.Lease lease = connections.writer()) {
+            Migration.inTransaction(lease.connection(), conn -> {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.executeUpdate("""
+                            CREATE TABLE IF NOT EXISTS categories (
+                                id INTEGER PRIMARY KEY,
+                                name TEXT NOT NULL UNIQUE
+                            )
+                            """);
+                    // A higher priority wins when a description matches keywords of several categories
+                    stmt.executeUpdate("""
+                            CREATE TABLE IF NOT EXISTS category_rules (
+                                keyword TEXT PRIMARY KEY COLLATE NOCASE,
+                                category_id INTEGER NOT NULL REFERENCES categories(id),
+                                priority INTEGER NOT NULL DEFAULT 0
+                            )
+                            """);
+                    stmt.executeUpdate("""
+                            CREATE TABLE IF NOT EXISTS descriptions (
+                                id INTEGER PRIMARY KEY,
+                                text TEXT NOT NULL UNIQUE,
+                                category_id INTEGER REFERENCES categories(id)
+                            )
+                            """);
+                    if (!TableRebuild.hasColumn(conn, "transactions", "description_id")) {
+                        stmt.executeUpdate("ALTER TABLE transactions ADD COLUMN description_id INTEGER");
+                    }
+                    if (!TableRebuild.hasColumn(conn, "transactions", "category_id")) {
+                        stmt.executeUpdate("ALTER TABLE transactions ADD COLUMN category_id INTEGER");
+                    }
+                    stmt.executeUpdate("""
+                            CREATE INDEX IF NOT EXISTS idx_transactions_undescribed
+                            ON transactions(id) WHERE description_id IS NULL
+                            """);
+
+                    stmt.executeUpdate("""
+                            INSERT OR IGNORE INTO categories (id, name) VALUES
+                                (1, 'Savings'),
+                                (2, 'Loans'),
+                                (3, 'Food & Drink'),
+                                (4, 'Transport'),
+                                (5, 'Bills & Utilities'),
+                                (6, 'Shopping'),
+                                (7, 'Income'),
+                                (8, 'Transfers')
+                            """);
+                    stmt.executeUpdate("""
+                            INSERT OR IGNORE INTO category_rules (keyword, category_id, priority) VALUES
+                                ('savings', 1, 30),
+                                ('loan', 2, 20),
+                                ('repayment', 2, 20),
+                                ('installment', 2, 20),
+                                ('coffee', 3, 10),
+                                ('cafe', 3, 10),
+                                ('restaurant', 3, 10),
+                                ('grocer', 3, 10),
+                                ('food', 3, 10),
+                                ('lunch', 3, 10),
+                                ('dinner', 3, 10),
+                                ('grab', 4, 10),
+                                ('uber', 4, 10),
+                                ('taxi', 4, 10),
+                                ('fuel', 4, 10),
+                                ('petrol', 4, 10),
+                                ('parking', 4, 10),
+                                ('toll', 4, 10),
+                                ('train', 4, 10),
+                                ('electric', 5, 10),
+                                ('water bill', 5, 10),
+                                ('internet', 5, 10),
+                                ('phone', 5, 10),
+                                ('utilit', 5, 10),
+                                ('bill', 5, 5),
+                                ('shop', 6, 10),
+                                ('store', 6, 10),
+                                ('mall', 6, 10),
+                                ('amazon', 6, 10),
+                                ('lazada', 6, 10),
+                                ('salary', 7, 10),
+                                ('payroll', 7, 10),
+                                ('refund', 7, 10),
+                                ('interest', 7, 10),
+                                ('dividend', 7, 10),
+                                ('transfer', 8, 0)
+                            """);
+                }
+            });
+        }
+    }
+
+    /**
+     * Repayment debits said which loan they paid in their description
+     * ("Loan repayment, loan #12"), which made the text unique per loan. The
+     * link moves to loan_payments; the descriptions go back to the plain
+     * "Loan repayment" and "Payroll loan deduction" and are retagged, and
+     * the per-loan dictionary entries are dropped.
+     */
+    private static void createLoanPayments(ConnectionManager connections) throws SQLException {
+        try (ConnectionManager.Lease lease = connections.writer()) {
+            Migration.inTransaction(lease.connection(), conn -> {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.executeUpdate("""
+                        CREATE TABLE IF NOT EXISTS loan_payments (
+                            transaction_id INTEGER PRIMARY KEY,
+                            loan_id INTEGER NOT NULL,
+                            amount INTEGER NOT NULL,
+                            FOREIGN KEY (transaction_id) REFERENCES transactions(id),
+                            FOREIGN KEY (loan_id) REFERENCES loans(id)
+                        )
+                        """);
+                    stmt.executeUpdate("CREATE INDEX IF NOT EXISTS idx_loan_payments_loan ON loan_payments(loan_id)");
+
+                    stmt.executeUpdate("""
+                        INSERT OR IGNORE INTO loan_payments (transaction_id, loan_id, amount)
+                        SELECT id, CAST(substr(description, instr(description, ', loan #') + 8) AS INTEGER), amount
+                        FROM transactions
+                        WHERE description GLOB 'Loan repayment, loan #[0-9]*'
+                        OR description GLOB 'Payroll loan deduction, loan #[0-9]*'
+                        """);
+                    // Every expression reads the row as it was, so the subqueries see the old text
+                    int moved = stmt.executeUpdate("""
+                        UPDATE transactions
+                        SET description = substr(description, 1, instr(description, ', loan #') - 1),
+                            description_id = (SELECT d.id FROM descriptions d
+                                              WHERE d.text = substr(transactions.description, 1,
+                                                                    instr(transactions.description, ', loan #') - 1)),
+                            category_id = (SELECT d.category_id FROM descriptions d
+                                           WHERE d.text = substr(transactions.description, 1,
+                                                                 instr(transactions.description, ', loan #') - 1))
+                        WHERE description GLOB 'Loan repayment, loan #[0-9]*'
+                        OR description GLOB 'Payroll loan deduction, loan #[0-9]*'
+                        """);
+                    // No row has these texts any more
+                    stmt.executeUpdate("""
+                        DELETE FROM descriptions
+                        WHERE text GLOB 'Loan repayment, loan #[0-9]*' OR text GLOB 'Payroll loan deduction, loan #[0-9]*'
+                        """);
+                    if (moved > 0) {
+                        System.out.println("Moved the loan of " + moved + " repayment debits to loan_payments");
+                    }
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package org.example;
+
+import java.math.BigInteger;
+import java.util.Currency;
+
+/**
+ * An exact amount of money in minor units (cents) of one currency.
+ *
+ * The ledger stores and computes amounts as plain {@code long} cents; the
+ * static helpers below work on those longs directly so hot paths never
+ * allocate. The record itself is for API boundaries where the currency
+ * should travel with the amount.
+ */
+public record Money(long cents, Currency currency) implements Comparable<Money> {
+
+    /** The ledger is single-currency; every stored amount is in this currency. */
+    public static final Currency LEDGER_CURRENCY = Currency.getInstance("MYR");
+
+    public static Money of(long cents) {
+        return new Money(cents, LEDGER_CURRENCY);
+    }
+
+    public static Money parse(String text) {
+        return of(parseCents(text));
+    }
+
+    public Money plus(Money other) {
+        requireSameCurrency(other);
+        return new Money(Math.addExact(cents, other.cents), currency);
+    }
+
+    public Money minus(Money other) {
+        requireSameCurrency(other);
+        return new Money(Math.subtractExact(cents, other.cents), currency);
+    }
+
+    public boolean isPositive() {
+        return cents > 0;
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        requireSameCurrency(other);
+        return Long.compare(cents, other.cents);
+    }
+
+    private void requireSameCurrency(Money other) {
+        if (!currency.equals(other.currency)) {
+            throw new IllegalArgumentException("Currency mismatch: " + currency + " vs " + other.currency);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return currency.getCurrencyCode() + " " + format(cents);
+    }
+
+    // ====== long-cents arithmetic ======
+
+    /**
+     * Parses a decimal amount such as "12", "12.5" or "-0.07" into cents
+     * without going through double. More than two decimals is an error
+     * rather than a silent rounding.
+     */
+    public static long parseCents(String text) {
+        String s = text.trim();
+        int i = 0;
+        boolean negative = false;
+        if (!s.isEmpty() && (s.charAt(0) == '-' || s.charAt(0) == '+')) {
+            negative = s.charAt(0) == '-';
+            i++;
+        }
+
+        long units = 0;
+        int digits = 0;
+        while (i < s.length() && Character.isDigit(s.charAt(i))) {
+            units = Math.addExact(Math.multiplyExact(units, 10), s.charAt(i) - '0');
+            i++;
+            digits++;
+        }
+
+        long fraction = 0;
+        int decimals = 0;
+        if (i < s.length() && s.charAt(i) == '.') {
+            i++;
+            while (i < s.length() && Character.isDigit(s.charAt(i))) {
+                if (++decimals > 2) {
+                    throw new NumberFormatException("More than two decimal places: " + text);
+                }
+                fraction = fraction * 10 + (s.charAt(i) - '0');
+                i++;
+            }
+        }
+        if (i != s.length() || digits + decimals == 0) {
+            throw new NumberFormatException("Not an amount: " + text);
+        }
+        if (decimals == 1) {
+            fraction *= 10;
+        }
+
+        long cents = Math.addExact(Math.multiplyExact(units, 100), fraction);
+        return negative ? -cents : cents;
+    }
+
+    /**
+     * Converts a legacy double amount to cents, rounding to the nearest cent.
+     */
+    public static long fromDouble(double amount) {
+        return Math.round(amount * 100);
+    }
+
+    /**
+     * cents * factor, rounded half-even to a whole cent. Used for interest
+     * and percentages, where the factor is a rate and not money itself.
+     */
+    public static long multiply(long cents, double factor) {
+        return (long) Math.rint(cents * factor);
+    }
+
+    public static long percent(long cents, double percent) {
+        return multiply(cents, percent / 100.0);
+    }
+
+    /**
+     * cents * part / whole, rounded down, without overflowing on large
+     * amounts. The shares of a total computed this way never add up to more
+     * than the total.
+     */
+    public static long share(long cents, long part, long whole) {
+        long high = Math.multiplyHigh(cents, part);
+        long low = cents * part;
+        if ((high == 0 && low >= 0) || (high == -1 && low < 0)) {
+            return Math.floorDiv(low, whole);
+        }
+        return BigInteger.valueOf(cents).multiply(BigInteger.valueOf(part))
+                .divide(BigInteger.valueOf(whole)).longValueExact();
+    }
+
+    public static String format(long cents) {
+        char[] buffer = new char[24];
+        int start = write(cents, buffer);
+        return new String(buffer, start, buffer.length - start);
+    }
+
+    /**
+     * Writes cents as "-123.45" right-aligned into buffer (at least 24 chars)
+     * and returns the index of the first character.
+     */
+    public static int write(long cents, char[] buffer) {
+        boolean negative = cents < 0;
+        // Work on the negative value so Long.MIN_VALUE does not overflow
+        long value = negative ? cents : -cents;
+
+        int pos = buffer.length;
+        buffer[--pos] = (char) ('0' - value % 10);
+        value /= 10;
+        buffer[--pos] = (char) ('0' - value % 10);
+        value /= 10;
+        buffer[--pos] = '.';
+        do {
+            buffer[--pos] = (char) ('0' - value % 10);
+            value /= 10;
+        } while (value != 0);
+        if (negative) {
+            buffer[--pos] = '-';
+        }
+        return pos;
+    }
+}
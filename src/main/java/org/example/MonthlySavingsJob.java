@@ -0,0 +1,187 @@
+package org.example;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.YearMonth;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Moves each saver's percentage of their account balance into savings,
+ * once per month.
+ *
+ * Savers are processed in id order, chunkSize at a time. Each chunk reads
+ * its savers and balances with one query and writes the debits, the savings
+ * updates and the checkpoint with batched statements in one transaction. A
+ * crash therefore loses at most the chunk in flight, and the next run for
+ * the same month resumes after the last committed chunk. The writer is
+ * released between chunks so interactive requests are not held up.
+ */
+public class MonthlySavingsJob {
+    static final String CHUNK_SQL = """
+            SELECT s.id, s.user_email, s.percentage, b.balance
+            FROM savings s LEFT JOIN account_balances b ON b.user_email = s.user_email
+            WHERE s.id > ?
+            ORDER BY s.id
+            LIMIT ?
+            """;
+    private static final String UPDATE_SAVINGS_SQL = "UPDATE savings SET balance = balance + ? WHERE id = ?";
+    private static final String START_SQL = "INSERT OR IGNORE INTO savings_transfer_runs(period) VALUES (?)";
+    private static final String CHECKPOINT_SQL = """
+            SELECT last_savings_id, finished_at IS NOT NULL FROM savings_transfer_runs WHERE period = ?
+            """;
+    private static final String ADVANCE_SQL = """
+            UPDATE savings_transfer_runs
+            SET last_savings_id = ?,
+                users_processed = users_processed + ?,
+                transfers = transfers + ?,
+                amount_transferred = amount_transferred + ?
+            WHERE period = ?
+            """;
+    private static final String FINISH_SQL =
+            "UPDATE savings_transfer_runs SET finished_at = CURRENT_TIMESTAMP WHERE period = ?";
+    private static final String DESCRIPTION = "Monthly savings transfer";
+
+    private final ConnectionManager connections;
+    private final int chunkSize;
+
+    public MonthlySavingsJob(ConnectionManager connections, int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be at least 1");
+        }
+        this.connections = connections;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Runs (or resumes) the transfer for the given month. Running a month
+     * that already finished does nothing.
+     */
+    public SavingsTransferReport run(YearMonth month) throws SQLException {
+        return run(month, () -> false);
+    }
+
+    /**
+     * As {@link #run(YearMonth)}, but checks stop between chunks and, once it
+     * returns true, returns without marking the month finished.
+     */
+    public SavingsTransferReport run(YearMonth month, BooleanSupplier stop) throws SQLException {
+        String period = month.toString();
+        long start = System.nanoTime();
+
+        long lastId;
+        try (ConnectionManager.Lease lease = connections.writer()) {
+            PreparedStatement startRun = lease.prepare(START_SQL);
+            startRun.setString(1, period);
+            startRun.executeUpdate();
+
+            PreparedStatement checkpoint = lease.prepare(CHECKPOINT_SQL);
+            checkpoint.setString(1, period);
+            try (ResultSet rs = checkpoint.executeQuery()) {
+                rs.next();
+                if (rs.getBoolean(2)) {
+                    return new SavingsTransferReport(period, 0, 0, 0, true, Duration.ofNanos(System.nanoTime() - start));
+                }
+                lastId = rs.getLong(1);
+            }
+        }
+
+        long users = 0;
+        long transfers = 0;
+        long amount = 0;
+        while (true) {
+            if (stop.getAsBoolean()) {
+                return new SavingsTransferReport(period, users, transfers, amount, false,
+                        Duration.ofNanos(System.nanoTime() - start));
+            }
+            Chunk chunk;
+            try (ConnectionManager.Lease lease = connections.writer()) {
+                chunk = transferChunk(lease, period, lastId);
+            }
+            if (chunk.users() == 0) {
+                break;
+            }
+            lastId = chunk.lastId();
+            users += chunk.users();
+            transfers += chunk.transfers();
+            amount += chunk.amount();
+        }
+
+        try (ConnectionManager.Lease lease = connections.writer()) {
+            PreparedStatement finish = lease.prepare(FINISH_SQL);
+            finish.setString(1, period);
+            finish.executeUpdate();
+        }
+        return new SavingsTransferReport(period, users, transfers, amount, false,
+                Duration.ofNanos(System.nanoTime() - start));
+    }
+
+    private record Chunk(long lastId, int users, int transfers, long amount) {
+    }
+
+    private Chunk transferChunk(ConnectionManager.Lease lease, String period, long afterId) throws SQLException {
+        Connection conn = lease.connection();
+        PreparedStatement select = lease.prepare(CHUNK_SQL);
+        PreparedStatement debit = lease.prepare(TransactionBatchWriter.INSERT_SQL);
+        PreparedStatement credit = lease.prepare(UPDATE_SAVINGS_SQL);
+
+        conn.setAutoCommit(false);
+        try {
+            long lastId = afterId;
+            int users = 0;
+            int transfers = 0;
+            long amount = 0;
+
+            select.setLong(1, afterId);
+            select.setInt(2, chunkSize);
+            try (ResultSet rs = select.executeQuery()) {
+                while (rs.next()) {
+                    lastId = rs.getLong(1);
+                    users++;
+                    String email = rs.getString(2);
+                    long balance = rs.getLong(4);
+                    long deduction = Money.percent(balance, rs.getDouble(3));
+                    // Users with no account row read as balance 0 and are skipped here
+                    if (deduction <= 0 || balance < deduction) {
+                        continue;
+                    }
+
+                    TransactionBatchWriter.bind(debit, new Transaction("Debit", deduction, DESCRIPTION, email));
+                    debit.addBatch();
+                    credit.setLong(1, deduction);
+                    credit.setLong(2, lastId);
+                    credit.addBatch();
+                    transfers++;
+                    amount += deduction;
+                }
+            }
+
+            if (transfers > 0) {
+                TransactionBatchWriter.intern(lease, DESCRIPTION);
+                debit.executeBatch();
+                credit.executeBatch();
+            }
+
+            PreparedStatement advance = lease.prepare(ADVANCE_SQL);
+            advance.setLong(1, lastId);
+            advance.setInt(2, users);
+            advance.setInt(3, transfers);
+            advance.setLong(4, amount);
+            advance.setString(5, period);
+            advance.executeUpdate();
+
+            conn.commit();
+            return new Chunk(lastId, users, transfers, amount);
+        } catch (SQLException e) {
+            // The statements are cached, so do not leave half a batch on them
+            debit.clearBatch();
+            credit.clearBatch();
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package org.example;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs EXPLAIN QUERY PLAN over the queries on the login and transaction
+ * paths and reports any that fall back to a full table scan.
+ *
+ * QueryPlanAuditTest runs it against a freshly migrated schema on every
+ * {@code mvn test}. To check an existing database, run
+ * {@code java org.example.QueryPlanAudit}, which exits with status 1 if any
+ * hot query regressed.
+ */
+public class QueryPlanAudit {
+
+    // Keep these in sync with the SQL in DatabaseHandler, CsvExporter and Main
+    static final Map<String, String> HOT_QUERIES = new LinkedHashMap<>();
+
+    static {
+        HOT_QUERIES.put("user cache load", UserCache.SQL);
+        HOT_QUERIES.put("getBalance", "SELECT balance FROM account_balances WHERE user_email = ?");
+        HOT_QUERIES.put("ledger conditional debit", LedgerService.DEBIT_SQL);
+        HOT_QUERIES.put("journal nearest snapshot", Journal.SNAPSHOT_SQL);
+        HOT_QUERIES.put("journal tail replay", Journal.TAIL_SQL);
+        HOT_QUERIES.put("exportToCSV", CsvExporter.SQL);
+        HOT_QUERIES.put("spending report load", SpendingColumns.USER_SQL);
+        HOT_QUERIES.put("transaction insert", TransactionBatchWriter.INSERT_SQL);
+        HOT_QUERIES.put("description backfill chunk", DescriptionBackfillJob.UNTAGGED_SQL);
+        HOT_QUERIES.put("description lookup", DescriptionBackfillJob.LOOKUP_SQL);
+        HOT_QUERIES.put("history older page", TransactionHistory.OLDER_SQL);
+        HOT_QUERIES.put("history newer page", TransactionHistory.NEWER_SQL);
+        LocalDate day = LocalDate.of(2024, 1, 1);
+        HOT_QUERIES.put("filterHistory by date", HistoryQuery.forUser("audit")
+                .between(day, day)
+                .sortBy(HistoryQuery.SortField.DATE, true)
+                .sql());
+        HOT_QUERIES.put("filterHistory by type and date", HistoryQuery.forUser("audit")
+                .type("Debit")
+                .between(day, day)
+                .amountBetween(0, 1)
+                .sortBy(HistoryQuery.SortField.DATE, false)
+                .sql());
+        HOT_QUERIES.put("loan reminder sweep", LoanReminderEngine.DUE_SQL);
+        HOT_QUERIES.put("blocklist sweep", LoanBlocklist.SWEEP_SQL);
+        HOT_QUERIES.put("blocklist user refresh", LoanBlocklist.USER_SQL);
+        HOT_QUERIES.put("repayLoan open loans", RepaymentProcessor.OPEN_LOANS_SQL);
+        HOT_QUERIES.put("repayLoan amount due", RepaymentProcessor.DUE_SQL);
+        HOT_QUERIES.put("getLoanBalance", LoanEngine.BALANCE_SQL);
+        HOT_QUERIES.put("monthly savings chunk", MonthlySavingsJob.CHUNK_SQL);
+        HOT_QUERIES.put("activateSavings", "SELECT user_email FROM savings WHERE user_email = ?");
+    }
+
+    /**
+     * Returns one line per plan step that scans a whole table or index, or
+     * sorts rows the index should have returned in order. An empty list
+     * means every hot query is an ordered index search.
+     */
+    public static List<String> audit(ConnectionManager connections) throws SQLException {
+        List<String> regressions = new ArrayList<>();
+        try (ConnectionManager.Lease lease = connections.reader()) {
+            for (Map.Entry<String, String> query : HOT_QUERIES.entrySet()) {
+                // Not cached: EXPLAIN statements are only ever run here
+                try (PreparedStatement ps = lease.connection().prepareStatement("EXPLAIN QUERY PLAN " + query.getValue());
+                     ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        String detail = rs.getString("detail");
+                        boolean fullScan = detail.startsWith("SCAN ") && !detail.startsWith("SCAN CONSTANT ROW");
+                        // A sort means the ORDER BY is not served by the index, so LIMIT still reads every match
+                        boolean sort = detail.startsWith("USE TEMP B-TREE FOR ORDER BY");
+                        if (fullScan || sort) {
+                            regressions.add(query.getKey() + ": " + detail);
+                        }
+                    }
+                }
+            }
+        }
+        return regressions;
+    }
+
+    public static void main(String[] args) throws SQLException {
+        List<String> regressions = audit(DatabaseHandler.connections);
+        if (regressions.isEmpty()) {
+            System.out.println("Query plan audit passed: " + HOT_QUERIES.size() + " queries use indexes.");
+            return;
+        }
+
+        System.out.println("Query plan audit failed, full scans found:");
+        regressions.forEach(r -> System.out.println("  " + r));
+        System.exit(1);
+    }
+}
@@ -0,0 +1,45 @@
+package org.example;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the latest sweep's reminders per user in memory, so showing a
+ * user their reminders at login is a map lookup instead of a query.
+ * Each sweep replaces the previous one as a whole when it ends; a sweep
+ * that fails leaves the previous one in place.
+ */
+public class ReminderMailbox implements ReminderSink {
+    private volatile Map<Integer, List<LoanReminder>> current = Map.of();
+    private Map<Integer, List<LoanReminder>> next;
+
+    @Override
+    public void begin(LocalDate today) {
+        next = new ConcurrentHashMap<>();
+    }
+
+    @Override
+    public void send(List<LoanReminder> batch) {
+        for (LoanReminder reminder : batch) {
+            next.computeIfAbsent(reminder.userId(), id -> new ArrayList<>()).add(reminder);
+        }
+    }
+
+    @Override
+    public void end() {
+        current = next;
+        next = null;
+    }
+
+    @Override
+    public void abort() {
+        next = null;
+    }
+
+    public List<LoanReminder> forUser(int userId) {
+        return current.getOrDefault(userId, List.of());
+    }
+}
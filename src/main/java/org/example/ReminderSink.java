@@ -0,0 +1,37 @@
+package org.example;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Where {@link LoanReminderEngine} delivers reminders. A sweep calls begin,
+ * then send once per batch, then end; if the sweep fails part way, abort
+ * is called instead of end and the sink should drop what it was sent. A
+ * failed sweep is run again, so a sink that keeps output across sweeps
+ * should only make a sweep's reminders visible in end.
+ */
+public interface ReminderSink {
+
+    default void begin(LocalDate today) throws IOException {
+    }
+
+    void send(List<LoanReminder> batch) throws IOException;
+
+    default void end() throws IOException {
+    }
+
+    /** Called instead of end when the sweep failed, possibly before begin. */
+    default void abort() throws IOException {
+    }
+
+    static ReminderSink console() {
+        return batch -> {
+            StringBuilder out = new StringBuilder();
+            for (LoanReminder reminder : batch) {
+                out.append(reminder.email()).append(": ").append(reminder).append('\n');
+            }
+            System.out.print(out);
+        };
+    }
+}
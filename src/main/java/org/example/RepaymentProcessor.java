@@ -0,0 +1,325 @@
+package org.example;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Applies repayments across all of a borrower's active loans.
+ *
+ * A repayment is split between loans by an {@link AllocationPolicy}. Each
+ * loan's share pays off its installments in order; whatever is left over
+ * is kept as credit towards the next installment, and the loan's due date
+ * moves to the first installment still unpaid. The account debit and the
+ * loan update are written in the same transaction, and loan_payments
+ * records which loan each debit paid; the debit's description stays the
+ * same for every loan, so it is one dictionary entry.
+ *
+ * Each loan's share is debited through {@link LedgerService#debitWithin}
+ * while the account is locked against other debits, so a repayment never
+ * overdraws the account: a share the balance does not cover is neither
+ * debited nor applied, and is reported as declined.
+ *
+ * Payroll deduction files are applied batchSize rows per transaction, so a
+ * month-end run of thousands of repayments costs a handful of commits.
+ */
+public class RepaymentProcessor {
+    // Oldest first; idx_loans_user_status already holds this order
+    static final String OPEN_LOANS_SQL = """
+            SELECT id, interest_rate, outstanding_balance, next_installment, installment_credit
+            FROM loans
+            WHERE user_id = (SELECT id FROM users WHERE email = ?) AND status = 'active' AND outstanding_balance > 0
+            ORDER BY created_at, id
+            """;
+    static final String DUE_SQL = """
+            SELECT COALESCE(SUM(i.principal + i.interest - l.installment_credit), 0)
+            FROM loans l JOIN loan_installments i ON i.loan_id = l.id AND i.number = l.next_installment
+            WHERE l.user_id = (SELECT id FROM users WHERE email = ?) AND l.status = 'active'
+            """;
+    private static final String INSTALLMENTS_SQL =
+            "SELECT principal + interest FROM loan_installments WHERE loan_id = ? AND number >= ? ORDER BY number";
+    private static final String LINK_SQL =
+            "INSERT INTO loan_payments (transaction_id, loan_id, amount) VALUES (last_insert_rowid(), ?, ?)";
+    private static final String MARK_PAID_SQL = """
+            UPDATE loan_installments SET paid_at = CURRENT_TIMESTAMP
+            WHERE loan_id = ? AND number >= ? AND number < ?
+            """;
+    // due_date follows next_installment; it stays on the last installment once all are paid
+    private static final String UPDATE_LOAN_SQL = """
+            UPDATE loans
+            SET outstanding_balance = outstanding_balance - ?1,
+                next_installment = ?2,
+                installment_credit = ?3,
+                due_date = COALESCE((SELECT due_date FROM loan_installments WHERE loan_id = ?4 AND number = ?2),
+                                    due_date),
+                status = CASE WHEN outstanding_balance - ?1 <= 0 THEN 'repaid' ELSE status END
+            WHERE id = ?4
+            """;
+
+    record OpenLoan(long id, double rate, long outstanding, int nextInstallment, long credit) {
+    }
+
+    /**
+     * What a repayment did. applied went to loans; declined is what the
+     * balance could not cover, which was not taken. The status is
+     * INSUFFICIENT_FUNDS if anything was declined.
+     */
+    public record Result(LedgerService.Status status, long applied, long declined) {
+        static Result of(long applied, long declined) {
+            return new Result(declined > 0 ? LedgerService.Status.INSUFFICIENT_FUNDS : LedgerService.Status.OK,
+                    applied, declined);
+        }
+    }
+
+    private record PayrollRow(long line, String email, long amount, String content) {
+    }
+
+    private static final class Totals {
+        long rowsApplied;
+        long amountApplied;
+        long amountUnapplied;
+    }
+
+    private final ConnectionManager connections;
+    private final LedgerService ledger;
+    private final int batchSize;
+
+    public RepaymentProcessor(ConnectionManager connections, LedgerService ledger, int batchSize) {
+        this.connections = connections;
+        this.ledger = ledger;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Debits amount from the borrower's account and spreads it over their
+     * active loans. Less than amount is applied when the borrower owed less,
+     * or when the balance did not cover a loan's share (declined).
+     */
+    public Result repay(String email, long amount, AllocationPolicy policy) throws SQLException {
+        Result[] result = new Result[1];
+        ledger.lockAccounts(List.of(email), () -> {
+            try (ConnectionManager.Lease lease = connections.writer()) {
+                Migration.inTransaction(lease.connection(),
+                        c -> result[0] = apply(lease, email, amount, policy, "Loan repayment"));
+            }
+        });
+        return result[0];
+    }
+
+    /**
+     * What the borrower needs to pay to settle the next installment of every
+     * active loan, less any credit already paid towards them.
+     */
+    public long due(String email) throws SQLException {
+        try (ConnectionManager.Lease lease = connections.reader()) {
+            PreparedStatement ps = lease.prepare(DUE_SQL);
+            ps.setString(1, email);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
+
+    /**
+     * Applies a payroll deduction file with one "email,amount" row per
+     * repayment and an optional "Email,Amount" header. Rows that cannot be
+     * parsed, or whose borrower has no active loan, are reported and skipped,
+     * and so is any part of a row the borrower's balance does not cover.
+     */
+    public RepaymentReport processFile(Path file, AllocationPolicy policy) throws IOException, SQLException {
+        long start = System.nanoTime();
+        List<ImportReport.Rejection> rejected = new ArrayList<>();
+        List<PayrollRow> batch = new ArrayList<>(batchSize);
+        Totals totals = new Totals();
+        long rowsRead = 0;
+
+        try (BufferedReader reader = Files.newBufferedReader(file)) {
+            String line;
+            long lineNo = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNo++;
+                if (line.isBlank() || (lineNo == 1 && line.regionMatches(true, 0, "Email,", 0, 6))) {
+                    continue;
+                }
+                rowsRead++;
+
+                List<String> fields = TransactionImporter.parseCsvLine(line);
+                if (fields == null || fields.size() != 2) {
+                    rejected.add(new ImportReport.Rejection(lineNo, "expected email,amount", line));
+                    continue;
+                }
+                long amount;
+                try {
+                    amount = Money.parseCents(fields.get(1));
+                } catch (NumberFormatException | ArithmeticException e) {
+                    rejected.add(new ImportReport.Rejection(lineNo, "invalid amount " + fields.get(1), line));
+                    continue;
+                }
+                if (amount <= 0) {
+                    rejected.add(new ImportReport.Rejection(lineNo, "amount must be positive", line));
+                    continue;
+                }
+
+                batch.add(new PayrollRow(lineNo, fields.get(0).trim(), amount, line));
+                if (batch.size() == batchSize) {
+                    applyBatch(batch, policy, totals, rejected);
+                    batch.clear();
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            applyBatch(batch, policy, totals, rejected);
+        }
+
+        rejected.sort(Comparator.comparingLong(ImportReport.Rejection::line));
+        return new RepaymentReport(rowsRead, totals.rowsApplied, totals.amountApplied, totals.amountUnapplied,
+                rejected, Duration.ofNanos(System.nanoTime() - start));
+    }
+
+    private void applyBatch(List<PayrollRow> batch, AllocationPolicy policy, Totals totals,
+                            List<ImportReport.Rejection> rejected) throws SQLException {
+        Totals pending = new Totals();
+        List<ImportReport.Rejection> unmatched = new ArrayList<>();
+        ledger.lockAccounts(batch.stream().map(PayrollRow::email).toList(), () -> {
+            try (ConnectionManager.Lease lease = connections.writer()) {
+                Migration.inTransaction(lease.connection(), c -> {
+                    for (PayrollRow row : batch) {
+                        Result result = apply(lease, row.email(), row.amount(), policy, "Payroll loan deduction");
+                        if (result.applied() > 0) {
+                            pending.rowsApplied++;
+                            pending.amountApplied += result.applied();
+                            pending.amountUnapplied += row.amount() - result.applied() - result.declined();
+                        }
+                        if (result.declined() > 0) {
+                            unmatched.add(new ImportReport.Rejection(row.line(), "insufficient funds for $"
+                                    + Money.format(result.declined()) + " of the deduction", row.content()));
+                        } else if (result.applied() == 0) {
+                            unmatched.add(new ImportReport.Rejection(row.line(), "no active loan for " + row.email(),
+                                    row.content()));
+                        }
+                    }
+                });
+            }
+        });
+        // Only counted once the batch has committed
+        totals.rowsApplied += pending.rowsApplied;
+        totals.amountApplied += pending.amountApplied;
+        totals.amountUnapplied += pending.amountUnapplied;
+        rejected.addAll(unmatched);
+    }
+
+    // Runs inside the caller's transaction, with the account locked
+    private Result apply(ConnectionManager.Lease lease, String email, long amount, AllocationPolicy policy,
+                         String description) throws SQLException {
+        List<OpenLoan> loans = new ArrayList<>();
+        PreparedStatement open = lease.prepare(OPEN_LOANS_SQL);
+        open.setString(1, email);
+        try (ResultSet rs = open.executeQuery()) {
+            while (rs.next()) {
+                loans.add(new OpenLoan(rs.getLong(1), rs.getDouble(2), rs.getLong(3), rs.getInt(4), rs.getLong(5)));
+            }
+        }
+
+        long[] shares = allocate(policy, loans, amount);
+        long applied = 0;
+        long declined = 0;
+        for (int i = 0; i < shares.length; i++) {
+            if (shares[i] == 0) {
+                continue;
+            }
+            if (pay(lease, email, loans.get(i), shares[i], description)) {
+                applied += shares[i];
+            } else {
+                declined += shares[i];
+            }
+        }
+        return Result.of(applied, declined);
+    }
+
+    /**
+     * Splits amount between loans, which must be in oldest-first order. No
+     * loan gets more than it still owes, so the shares add up to less than
+     * amount when the borrower owes less than that in total.
+     */
+    static long[] allocate(AllocationPolicy policy, List<OpenLoan> loans, long amount) {
+        long[] shares = new long[loans.size()];
+        long owed = 0;
+        for (OpenLoan loan : loans) {
+            owed += loan.outstanding();
+        }
+        long left = Math.min(amount, owed);
+        if (left <= 0) {
+            return shares;
+        }
+
+        Integer[] order = new Integer[loans.size()];
+        Arrays.setAll(order, i -> i);
+        if (policy == AllocationPolicy.HIGHEST_RATE_FIRST) {
+            // Stable, so loans with the same rate are still paid oldest first
+            Arrays.sort(order, Comparator.comparingDouble((Integer i) -> loans.get(i).rate()).reversed());
+        } else if (policy == AllocationPolicy.PRO_RATA) {
+            long total = left;
+            for (int i = 0; i < shares.length; i++) {
+                shares[i] = Money.share(total, loans.get(i).outstanding(), owed);
+                left -= shares[i];
+            }
+        }
+
+        // Pays in order; for pro-rata this hands out the cents lost to rounding, oldest first
+        for (int i : order) {
+            long extra = Math.min(left, loans.get(i).outstanding() - shares[i]);
+            shares[i] += extra;
+            left -= extra;
+        }
+        return shares;
+    }
+
+    // Returns false, having changed nothing, if the balance does not cover amount
+    private boolean pay(ConnectionManager.Lease lease, String email, OpenLoan loan, long amount,
+                        String description) throws SQLException {
+        if (!ledger.debitWithin(lease, new Transaction("Debit", amount, description, email))) {
+            return false;
+        }
+        PreparedStatement link = lease.prepare(LINK_SQL);
+        link.setLong(1, loan.id());
+        link.setLong(2, amount);
+        link.executeUpdate();
+
+        long remaining = loan.credit() + amount;
+        int next = loan.nextInstallment();
+        PreparedStatement installments = lease.prepare(INSTALLMENTS_SQL);
+        installments.setLong(1, loan.id());
+        installments.setInt(2, next);
+        try (ResultSet rs = installments.executeQuery()) {
+            while (rs.next() && remaining >= rs.getLong(1)) {
+                remaining -= rs.getLong(1);
+                next++;
+            }
+        }
+
+        if (next > loan.nextInstallment()) {
+            PreparedStatement paid = lease.prepare(MARK_PAID_SQL);
+            paid.setLong(1, loan.id());
+            paid.setInt(2, loan.nextInstallment());
+            paid.setInt(3, next);
+            paid.executeUpdate();
+        }
+
+        PreparedStatement update = lease.prepare(UPDATE_LOAN_SQL);
+        update.setLong(1, amount);
+        update.setInt(2, next);
+        update.setLong(3, remaining);
+        update.setLong(4, loan.id());
+        update.executeUpdate();
+        return true;
+    }
+}
@@ -0,0 +1,20 @@
+package org.example;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Outcome of a repayment file: how many rows were read and applied, how
+ * much money went to loans and how much was left over because the borrower
+ * owed less, which rows were rejected, and how long it took.
+ */
+public record RepaymentReport(long rowsRead, long rowsApplied, long amountApplied, long amountUnapplied,
+                              List<ImportReport.Rejection> rejected, Duration elapsed) {
+
+    @Override
+    public String toString() {
+        return String.format("Read %d rows, applied %d ($%s), unapplied $%s, rejected %d in %d ms",
+                rowsRead, rowsApplied, Money.format(amountApplied), Money.format(amountUnapplied),
+                rejected.size(), elapsed.toMillis());
+    }
+}
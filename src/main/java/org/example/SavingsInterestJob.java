@@ -0,0 +1,80 @@
+package org.example;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Credits one month of interest to every savings balance.
+ *
+ * Balances are processed in id order, chunkSize at a time, and each chunk
+ * saves the last id it covered through {@link ScheduledJob.Context#advance}
+ * in the same transaction, so a retried slot continues where it stopped
+ * and never pays the same saver twice.
+ */
+public class SavingsInterestJob implements ScheduledJob {
+    static final String CHUNK_SQL = "SELECT id, balance FROM savings WHERE id > ? ORDER BY id LIMIT ?";
+    private static final String CREDIT_SQL = "UPDATE savings SET balance = balance + ? WHERE id = ?";
+
+    private final ConnectionManager connections;
+    private final double monthlyRate;
+    private final int chunkSize;
+
+    public SavingsInterestJob(ConnectionManager connections, double annualRate, int chunkSize) {
+        this.connections = connections;
+        this.monthlyRate = annualRate / 12;
+        this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public void run(Context context) throws SQLException {
+        long lastId = context.checkpoint();
+        long savers = 0;
+        long interest = 0;
+
+        while (!context.stopRequested()) {
+            int rows = 0;
+            try (ConnectionManager.Lease lease = connections.writer()) {
+                Connection conn = lease.connection();
+                PreparedStatement select = lease.prepare(CHUNK_SQL);
+                PreparedStatement credit = lease.prepare(CREDIT_SQL);
+
+                conn.setAutoCommit(false);
+                try {
+                    select.setLong(1, lastId);
+                    select.setInt(2, chunkSize);
+                    try (ResultSet rs = select.executeQuery()) {
+                        while (rs.next()) {
+                            lastId = rs.getLong(1);
+                            rows++;
+                            long amount = Money.multiply(rs.getLong(2), monthlyRate);
+                            if (amount > 0) {
+                                credit.setLong(1, amount);
+                                credit.setLong(2, lastId);
+                                credit.addBatch();
+                                interest += amount;
+                            }
+                        }
+                    }
+                    credit.executeBatch();
+                    context.advance(lease, lastId);
+                    conn.commit();
+                } catch (SQLException e) {
+                    credit.clearBatch();
+                    conn.rollback();
+                    throw e;
+                } finally {
+                    conn.setAutoCommit(true);
+                }
+            }
+            if (rows == 0) {
+                break;
+            }
+            savers += rows;
+        }
+
+        System.out.println("Savings interest for " + context.slot().toLocalDate() + ": " + savers
+                + " savers, " + Money.format(interest) + " credited");
+    }
+}
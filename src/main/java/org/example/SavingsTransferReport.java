@@ -0,0 +1,25 @@
+package org.example;
+
+import java.time.Duration;
+
+/**
+ * Outcome of one run of {@link MonthlySavingsJob}. Counts cover only the
+ * users processed by this run; a resumed run does not repeat earlier ones.
+ */
+public record SavingsTransferReport(String period, long usersProcessed, long transfers, long amountTransferred,
+                                    boolean alreadyFinished, Duration elapsed) {
+
+    public double usersPerSecond() {
+        double seconds = elapsed.toNanos() / 1e9;
+        return seconds == 0 ? 0 : usersProcessed / seconds;
+    }
+
+    @Override
+    public String toString() {
+        if (alreadyFinished) {
+            return "Monthly savings transfer for " + period + " already done";
+        }
+        return String.format("Monthly savings transfer for %s: %d users, %d transfers, %s moved in %d ms (%.0f users/s)",
+                period, usersProcessed, transfers, Money.format(amountTransferred), elapsed.toMillis(), usersPerSecond());
+    }
+}
@@ -0,0 +1,53 @@
+package org.example;
+
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+
+/**
+ * When a job is due. A schedule names its slots by the time they start; a
+ * slot is due once that time has passed, and stays due until a run for it
+ * succeeds, so a slot missed while the process was down is run on the next
+ * start instead of being skipped.
+ */
+@FunctionalInterface
+public interface Schedule {
+
+    /**
+     * The most recent slot at or before now.
+     */
+    LocalDateTime latestSlot(LocalDateTime now);
+
+    static Schedule daily(LocalTime at) {
+        return now -> {
+            LocalDateTime today = now.toLocalDate().atTime(at);
+            return today.isAfter(now) ? today.minusDays(1) : today;
+        };
+    }
+
+    /**
+     * Every given number of minutes, counted from midnight.
+     */
+    static Schedule everyMinutes(int minutes) {
+        if (minutes < 1 || minutes > 24 * 60) {
+            throw new IllegalArgumentException("Interval must be between one minute and one day");
+        }
+        return now -> {
+            int minuteOfDay = now.getHour() * 60 + now.getMinute();
+            return now.toLocalDate().atStartOfDay().plusMinutes(minuteOfDay - minuteOfDay % minutes);
+        };
+    }
+
+    /**
+     * Once a month on the given day (clamped to the month's length) at the given time.
+     */
+    static Schedule monthly(int dayOfMonth, LocalTime at) {
+        return now -> {
+            LocalDateTime thisMonth = slotIn(now.toLocalDate().withDayOfMonth(1).atTime(at), dayOfMonth);
+            return thisMonth.isAfter(now) ? slotIn(thisMonth.minusMonths(1), dayOfMonth) : thisMonth;
+        };
+    }
+
+    private static LocalDateTime slotIn(LocalDateTime month, int dayOfMonth) {
+        return month.withDayOfMonth(Math.min(dayOfMonth, month.toLocalDate().lengthOfMonth()));
+    }
+}
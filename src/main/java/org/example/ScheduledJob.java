@@ -0,0 +1,66 @@
+package org.example;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+
+/**
+ * A unit of work run by {@link JobScheduler} once per slot of its schedule.
+ *
+ * A run can be retried after a crash or a failure, so a job must either be
+ * idempotent or record its progress with {@link Context#advance} in the
+ * same transaction as the work it covers, and start from
+ * {@link Context#checkpoint} when it runs again.
+ */
+@FunctionalInterface
+public interface ScheduledJob {
+
+    void run(Context context) throws Exception;
+
+    final class Context {
+        private static final String ADVANCE_SQL = "UPDATE job_runs SET checkpoint = ? WHERE job = ? AND slot = ?";
+
+        private final String job;
+        private final LocalDateTime slot;
+        private final long checkpoint;
+        private final JobScheduler scheduler;
+
+        Context(String job, LocalDateTime slot, long checkpoint, JobScheduler scheduler) {
+            this.job = job;
+            this.slot = slot;
+            this.checkpoint = checkpoint;
+            this.scheduler = scheduler;
+        }
+
+        public LocalDateTime slot() {
+            return slot;
+        }
+
+        /**
+         * Progress saved by an earlier attempt at this slot, 0 on the first.
+         */
+        public long checkpoint() {
+            return checkpoint;
+        }
+
+        /**
+         * Saves progress on the given writer lease, inside whatever
+         * transaction the job has open there.
+         */
+        public void advance(ConnectionManager.Lease lease, long position) throws SQLException {
+            PreparedStatement ps = lease.prepare(ADVANCE_SQL);
+            ps.setLong(1, position);
+            ps.setString(2, job);
+            ps.setString(3, slot.toString());
+            ps.executeUpdate();
+        }
+
+        /**
+         * True once shutdown has begun. Long jobs should check this between
+         * chunks and return early; the slot is then resumed on the next start.
+         */
+        public boolean stopRequested() {
+            return scheduler.isStopping();
+        }
+    }
+}
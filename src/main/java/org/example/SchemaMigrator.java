@@ -0,0 +1,83 @@
+package org.example;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+/**
+ * Brings the database up to the latest schema version. Applied versions are
+ * recorded in schema_version, so a database that is already current costs
+ * one indexed read at startup instead of a round of DDL.
+ */
+public class SchemaMigrator {
+    private final ConnectionManager connections;
+    private final List<Migration> migrations;
+
+    public SchemaMigrator(ConnectionManager connections, List<Migration> migrations) {
+        this.connections = connections;
+        this.migrations = migrations;
+    }
+
+    /**
+     * Applies every migration newer than the recorded version, in order.
+     * Returns the version the database is at afterwards.
+     */
+    public int migrate() throws SQLException {
+        // Open the writer first so driver loading is not counted as schema cost
+        connections.writer().close();
+
+        long start = System.nanoTime();
+        int current = currentVersion();
+        int applied = 0;
+
+        for (Migration migration : migrations) {
+            if (migration.version() <= current) {
+                continue;
+            }
+
+            long stepStart = System.nanoTime();
+            migration.step().apply(connections);
+            long millis = (System.nanoTime() - stepStart) / 1_000_000;
+            record(migration, millis);
+
+            System.out.println("Applied migration V" + migration.version() + " (" + migration.description()
+                    + ") in " + millis + " ms");
+            current = migration.version();
+            applied++;
+        }
+
+        System.out.printf("Schema at version %d, %d migration(s) applied, schema check took %.1f ms%n",
+                current, applied, (System.nanoTime() - start) / 1e6);
+        return current;
+    }
+
+    public int currentVersion() throws SQLException {
+        try (ConnectionManager.Lease lease = connections.writer();
+             Statement stmt = lease.connection().createStatement()) {
+            stmt.executeUpdate("""
+                CREATE TABLE IF NOT EXISTS schema_version (
+                    version INTEGER PRIMARY KEY,
+                    description TEXT NOT NULL,
+                    applied_at DATETIME DEFAULT CURRENT_TIMESTAMP,
+                    duration_ms INTEGER NOT NULL
+                );
+                """);
+            try (ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(version), 0) FROM schema_version")) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
+    private void record(Migration migration, long millis) throws SQLException {
+        String sql = "INSERT OR REPLACE INTO schema_version(version, description, duration_ms) VALUES (?, ?, ?)";
+        try (ConnectionManager.Lease lease = connections.writer();
+             PreparedStatement ps = lease.connection().prepareStatement(sql)) {
+            ps.setInt(1, migration.version());
+            ps.setString(2, migration.description());
+            ps.setLong(3, millis);
+            ps.executeUpdate();
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package org.example;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Spending reports over {@link SpendingColumns}.
+ *
+ * Every report is one grouped sum: a fork/join scan splits the rows into
+ * ranges, each leaf adds its rows into a long[] indexed by group (month,
+ * day, category or description id), and the halves are added together on
+ * the way back up. No strings are compared and nothing is boxed while scanning.
+ */
+public class SpendingAnalytics {
+    // Smallest row range a leaf scans; leaves also get at least a few rows per
+    // accumulator slot so zeroing and merging never cost more than the scan
+    private static final int LEAF_ROWS = 1 << 14;
+
+    /** Money in and out in one month. */
+    public record MonthlyTotal(YearMonth month, long credits, long debits, int transactions) {
+        public long net() {
+            return credits - debits;
+        }
+    }
+
+    /** Debits with one description: total spent and how many there were. */
+    public record DescriptionTotal(String description, long spent, int transactions) {
+    }
+
+    /** Debits in one category. */
+    public record CategoryTotal(String category, long spent, int transactions) {
+    }
+
+    /** One day's debits and the trailing average ending that day. */
+    public record DailySpend(LocalDate day, long spent, long movingAverage) {
+    }
+
+    private final SpendingColumns columns;
+
+    public SpendingAnalytics(SpendingColumns columns) {
+        this.columns = columns;
+    }
+
+    /**
+     * Credits, debits and transaction count for every month from the first
+     * transaction to the last, oldest first. Months without transactions
+     * are included with zeros.
+     */
+    public List<MonthlyTotal> monthlyTotals() {
+        if (columns.size == 0) {
+            return List.of();
+        }
+        YearMonth first = YearMonth.from(LocalDate.ofEpochDay(columns.minDay));
+        YearMonth last = YearMonth.from(LocalDate.ofEpochDay(columns.maxDay));
+        int months = (int) (first.until(last, ChronoUnit.MONTHS) + 1);
+
+        // Month of every day in range, so the scan never builds a date
+        int[] monthOfDay = new int[columns.maxDay - columns.minDay + 1];
+        YearMonth month = first;
+        int m = 0;
+        for (int d = 0; d < monthOfDay.length; d++) {
+            YearMonth current = YearMonth.from(LocalDate.ofEpochDay(columns.minDay + d));
+            if (!current.equals(month)) {
+                month = current;
+                m++;
+            }
+            monthOfDay[d] = m;
+        }
+
+        SpendingColumns c = columns;
+        int base = c.minDay;
+        // Three slots per month: credits, debits, count
+        long[] sums = scan(months * 3, (from, to, acc) -> {
+            for (int i = from; i < to; i++) {
+                int slot = monthOfDay[c.day[i] - base] * 3;
+                acc[slot + (c.type[i] == SpendingColumns.CREDIT ? 0 : 1)] += c.amount[i];
+                acc[slot + 2]++;
+            }
+        });
+
+        List<MonthlyTotal> totals = new ArrayList<>(months);
+        for (int i = 0; i < months; i++) {
+            totals.add(new MonthlyTotal(first.plusMonths(i), sums[i * 3], sums[i * 3 + 1], (int) sums[i * 3 + 2]));
+        }
+        return totals;
+    }
+
+    /**
+     * Debits per category, largest first; categories with no debits are left out.
+     */
+    public List<CategoryTotal> categoryBreakdown() {
+        SpendingColumns c = columns;
+        // Two slots per category: spent, count
+        long[] sums = scan(c.categories.length * 2, (from, to, acc) -> {
+            for (int i = from; i < to; i++) {
+                if (c.type[i] == SpendingColumns.DEBIT) {
+                    int slot = c.category[i] * 2;
+                    acc[slot] += c.amount[i];
+                    acc[slot + 1]++;
+                }
+            }
+        });
+
+        List<CategoryTotal> totals = new ArrayList<>();
+        for (int id = 0; id < c.categories.length; id++) {
+            if (sums[id * 2 + 1] > 0) {
+                totals.add(new CategoryTotal(c.categories[id], sums[id * 2], (int) sums[id * 2 + 1]));
+            }
+        }
+        totals.sort(Comparator.comparingLong(CategoryTotal::spent).reversed());
+        return totals;
+    }
+
+    /**
+     * The n descriptions with the most spent on them, largest first: where
+     * the money goes, merchant by merchant.
+     */
+    public List<DescriptionTotal> topMerchants(int n) {
+        SpendingColumns c = columns;
+        // Two slots per description: spent, count
+        long[] sums = scan(c.descriptions.length * 2, (from, to, acc) -> {
+            for (int i = from; i < to; i++) {
+                if (c.type[i] == SpendingColumns.DEBIT) {
+                    int slot = c.description[i] * 2;
+                    acc[slot] += c.amount[i];
+                    acc[slot + 1]++;
+                }
+            }
+        });
+
+        // Min-heap of the best n so far
+        Comparator<Integer> bySpent = Comparator.comparingLong(id -> sums[id * 2]);
+        PriorityQueue<Integer> best = new PriorityQueue<>(bySpent);
+        for (int id = 0; id < c.descriptions.length; id++) {
+            if (sums[id * 2 + 1] == 0) {
+                continue;
+            }
+            if (best.size() < n) {
+                best.add(id);
+            } else if (n > 0 && sums[id * 2] > sums[best.peek() * 2]) {
+                best.poll();
+                best.add(id);
+            }
+        }
+        List<DescriptionTotal> top = new ArrayList<>(best.size());
+        while (!best.isEmpty()) {
+            int id = best.poll();
+            top.add(new DescriptionTotal(c.descriptions[id], sums[id * 2], (int) sums[id * 2 + 1]));
+        }
+        return top.reversed();
+    }
+
+    /**
+     * Debits per day from the first transaction through the given day (or
+     * the last transaction, if that is later), each with the average over
+     * the windowDays days ending on it (or over the days so far, at the
+     * start of the range), rounded half-even to the cent. Days without
+     * debits count as zero, so the last entry's average is the recent
+     * spend as of through even when the account has been quiet.
+     */
+    public List<DailySpend> dailySpending(int windowDays, LocalDate through) {
+        if (windowDays < 1) {
+            throw new IllegalArgumentException("Moving average needs a window of at least one day");
+        }
+        if (columns.size == 0) {
+            return List.of();
+        }
+        SpendingColumns c = columns;
+        int base = c.minDay;
+        int days = (int) (Math.max(c.maxDay, through.toEpochDay()) - c.minDay + 1);
+        long[] spent = scan(days, (from, to, acc) -> {
+            for (int i = from; i < to; i++) {
+                if (c.type[i] == SpendingColumns.DEBIT) {
+                    acc[c.day[i] - base] += c.amount[i];
+                }
+            }
+        });
+
+        List<DailySpend> series = new ArrayList<>(days);
+        long window = 0;
+        for (int d = 0; d < days; d++) {
+            window += spent[d];
+            if (d >= windowDays) {
+                window -= spent[d - windowDays];
+            }
+            long average = Money.multiply(window, 1.0 / Math.min(d + 1, windowDays));
+            series.add(new DailySpend(LocalDate.ofEpochDay(base + d), spent[d], average));
+        }
+        return series;
+    }
+
+    // Adds rows [from, to) into acc
+    @FunctionalInterface
+    private interface Leaf {
+        void accumulate(int from, int to, long[] acc);
+    }
+
+    private long[] scan(int width, Leaf leaf) {
+        int threshold = (int) Math.min(Integer.MAX_VALUE, Math.max(LEAF_ROWS, 4L * width));
+        return ForkJoinPool.commonPool().invoke(new Scan(0, columns.size, width, threshold, leaf));
+    }
+
+    private static final class Scan extends RecursiveTask<long[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+        private final int width;
+        private final int threshold;
+        private final transient Leaf leaf;
+
+        Scan(int from, int to, int width, int threshold, Leaf leaf) {
+            this.from = from;
+            this.to = to;
+            this.width = width;
+            this.threshold = threshold;
+            this.leaf = leaf;
+        }
+
+        @Override
+        protected long[] compute() {
+            if (to - from <= threshold) {
+                long[] acc = new long[width];
+                leaf.accumulate(from, to, acc);
+                return acc;
+            }
+            int mid = (from + to) >>> 1;
+            Scan left = new Scan(from, mid, width, threshold, leaf);
+            left.fork();
+            long[] right = new Scan(mid, to, width, threshold, leaf).compute();
+            long[] sums = left.join();
+            for (int i = 0; i < width; i++) {
+                sums[i] += right[i];
+            }
+            return sums;
+        }
+    }
+}
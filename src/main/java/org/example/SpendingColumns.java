@@ -0,0 +1,164 @@
+package org.example;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Transactions held column by column in primitive arrays, for
+ * {@link SpendingAnalytics}. Row i is amount[i], day[i], type[i],
+ * description[i] and category[i]; descriptions are dictionary-encoded, so a
+ * description repeated a million times is stored once. Categories come
+ * from the transactions table (see {@link DescriptionBackfillJob}), with 0
+ * for rows that have none.
+ *
+ * Columns are loaded in one pass on a reader connection. Under WAL the
+ * load neither blocks nor waits for the writer, and every report after
+ * that runs on the arrays without touching SQLite.
+ */
+public final class SpendingColumns {
+    static final String USER_SQL = """
+            SELECT type, amount, description, unixepoch(timestamp) / 86400, COALESCE(category_id, 0)
+            FROM transactions
+            WHERE user_email = ?
+            """;
+    static final String ALL_SQL = """
+            SELECT type, amount, description, unixepoch(timestamp) / 86400, COALESCE(category_id, 0)
+            FROM transactions
+            """;
+    static final String CATEGORIES_SQL = "SELECT id, name FROM categories";
+    private static final int FETCH_SIZE = 5000;
+
+    static final byte CREDIT = 1;
+    static final byte DEBIT = 2;
+
+    final int size;
+    /** Amount in cents, always positive; the type says which way it went. */
+    final long[] amount;
+    /** Days since 1970-01-01 (UTC). */
+    final int[] day;
+    final byte[] type;
+    /** Index into descriptions. */
+    final int[] description;
+    final String[] descriptions;
+    /** Category id, an index into categories. */
+    final int[] category;
+    final String[] categories;
+    final int minDay;
+    final int maxDay;
+
+    private SpendingColumns(int size, long[] amount, int[] day, byte[] type, int[] description,
+                            String[] descriptions, int[] category, String[] categories) {
+        this.size = size;
+        this.amount = amount;
+        this.day = day;
+        this.type = type;
+        this.description = description;
+        this.descriptions = descriptions;
+        this.category = category;
+        this.categories = categories;
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        for (int i = 0; i < size; i++) {
+            min = Math.min(min, day[i]);
+            max = Math.max(max, day[i]);
+        }
+        this.minDay = size == 0 ? 0 : min;
+        this.maxDay = size == 0 ? -1 : max;
+    }
+
+    /** One user's transactions. */
+    public static SpendingColumns forUser(ConnectionManager connections, String email) throws SQLException {
+        return load(connections, USER_SQL, email);
+    }
+
+    /** Every user's transactions, for ledger-wide reports. */
+    public static SpendingColumns forAllUsers(ConnectionManager connections) throws SQLException {
+        return load(connections, ALL_SQL, null);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int distinctDescriptions() {
+        return descriptions.length;
+    }
+
+    private static SpendingColumns load(ConnectionManager connections, String sql, String email) throws SQLException {
+        int capacity = 1024;
+        long[] amount = new long[capacity];
+        int[] day = new int[capacity];
+        byte[] type = new byte[capacity];
+        int[] description = new int[capacity];
+        int[] category = new int[capacity];
+        Map<String, Integer> dictionary = new HashMap<>();
+        List<String> descriptions = new ArrayList<>();
+        int n = 0;
+
+        try (ConnectionManager.Lease lease = connections.reader()) {
+            PreparedStatement ps = lease.prepare(sql);
+            if (email != null) {
+                ps.setString(1, email);
+            }
+            ps.setFetchSize(FETCH_SIZE);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    if (n == capacity) {
+                        capacity *= 2;
+                        amount = Arrays.copyOf(amount, capacity);
+                        day = Arrays.copyOf(day, capacity);
+                        type = Arrays.copyOf(type, capacity);
+                        description = Arrays.copyOf(description, capacity);
+                        category = Arrays.copyOf(category, capacity);
+                    }
+                    // Same rule as the balance trigger: anything that is not a credit is a debit
+                    type[n] = "Credit".equals(rs.getString(1)) ? CREDIT : DEBIT;
+                    amount[n] = rs.getLong(2);
+                    String text = rs.getString(3);
+                    if (text == null) {
+                        text = "";
+                    }
+                    Integer id = dictionary.get(text);
+                    if (id == null) {
+                        id = descriptions.size();
+                        dictionary.put(text, id);
+                        descriptions.add(text);
+                    }
+                    description[n] = id;
+                    day[n] = rs.getInt(4);
+                    category[n] = rs.getInt(5);
+                    n++;
+                }
+            }
+        }
+        return new SpendingColumns(n, amount, day, type, description, descriptions.toArray(new String[0]),
+                category, categoryNames(connections, category, n));
+    }
+
+    // Names indexed by category id, wide enough for every id in the rows
+    private static String[] categoryNames(ConnectionManager connections, int[] category, int n) throws SQLException {
+        Map<Integer, String> names = new HashMap<>();
+        try (ConnectionManager.Lease lease = connections.reader()) {
+            try (ResultSet rs = lease.prepare(CATEGORIES_SQL).executeQuery()) {
+                while (rs.next()) {
+                    names.put(rs.getInt(1), rs.getString(2));
+                }
+            }
+        }
+        int max = names.keySet().stream().mapToInt(Integer::intValue).max().orElse(0);
+        for (int i = 0; i < n; i++) {
+            max = Math.max(max, category[i]);
+        }
+        String[] categories = new String[max + 1];
+        for (int id = 0; id <= max; id++) {
+            categories[id] = names.getOrDefault(id, id == 0 ? "Uncategorized" : "Category " + id);
+        }
+        return categories;
+    }
+}
@@ -0,0 +1,69 @@
+package org.example;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LRU cache of prepared statements for one connection, keyed by SQL text.
+ * Not thread-safe on its own: it is only touched by the thread that holds
+ * the connection's lease. Statements handed out must not be closed by the caller.
+ */
+class StatementCache {
+    private final Connection connection;
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LinkedHashMap<String, PreparedStatement> statements;
+
+    StatementCache(Connection connection, int capacity, LongAdder hits, LongAdder misses) {
+        this.connection = connection;
+        this.hits = hits;
+        this.misses = misses;
+        this.statements = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() <= capacity) {
+                    return false;
+                }
+                closeQuietly(eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    PreparedStatement prepare(String sql) throws SQLException {
+        PreparedStatement ps = statements.get(sql);
+        if (ps != null && !ps.isClosed()) {
+            hits.increment();
+            return ps;
+        }
+
+        misses.increment();
+        ps = connection.prepareStatement(sql);
+        statements.put(sql, ps);
+        return ps;
+    }
+
+    int size() {
+        return statements.size();
+    }
+
+    // Called before the connection itself is closed
+    void clear() {
+        for (PreparedStatement ps : statements.values()) {
+            closeQuietly(ps);
+        }
+        statements.clear();
+    }
+
+    private static void closeQuietly(PreparedStatement ps) {
+        try {
+            ps.close();
+        } catch (SQLException e) {
+            System.out.println("Error closing cached statement: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package org.example;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+/**
+ * Rebuilds a table into a new shape without holding the writer for the whole copy.
+ *
+ * The new table is created as {@code <table>_rebuild}. Triggers on the old
+ * table mirror every insert, update and delete into it while rows are copied
+ * by id range, one transaction per chunk, so other writers get the
+ * connection between chunks. A final short transaction checks that both
+ * tables hold the same number of rows, drops the old table and renames the
+ * new one into place.
+ *
+ * Rows are copied with plain INSERTs: a row that breaks a constraint of the
+ * new shape fails the rebuild instead of being dropped. Only rows whose id
+ * is already in the new table (put there by a trigger, or by an earlier
+ * interrupted run) are skipped, so a rebuild interrupted by a crash simply
+ * starts again and converges.
+ */
+public class TableRebuild {
+    private final String table;
+    private final String newTableDdl;
+    private final String selectList;
+    private final List<String> afterSwap;
+    private final int chunkSize;
+
+    /**
+     * @param table       the table to rebuild; it must have an INTEGER PRIMARY KEY id
+     * @param newTableDdl CREATE TABLE for the new shape, with {@code %s} where the table name goes
+     * @param selectList  expressions over the old table that produce the new table's columns, in order
+     * @param afterSwap   indexes and triggers to recreate once the new table has the old name
+     */
+    public TableRebuild(String table, String newTableDdl, String selectList, List<String> afterSwap, int chunkSize) {
+        this.table = table;
+        this.newTableDdl = newTableDdl;
+        this.selectList = selectList;
+        this.afterSwap = afterSwap;
+        this.chunkSize = chunkSize;
+    }
+
+    public void run(ConnectionManager connections) throws SQLException {
+        String rebuild = table + "_rebuild";
+
+        try (ConnectionManager.Lease lease = connections.writer()) {
+            Migration.inTransaction(lease.connection(), conn -> {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.executeUpdate(String.format(newTableDdl.replace("CREATE TABLE", "CREATE TABLE IF NOT EXISTS"), rebuild));
+                    // Recreated, not kept, so a run interrupted by an older version gets these bodies.
+                    // Replaces the mirrored row by id only; any other conflict fails the write
+                    for (String op : List.of("insert", "update", "delete")) {
+                        stmt.executeUpdate("DROP TRIGGER IF EXISTS " + rebuild + "_mirror_" + op);
+                    }
+                    for (String op : List.of("INSERT", "UPDATE")) {
+                        stmt.executeUpdate("CREATE TRIGGER " + rebuild + "_mirror_" + op.toLowerCase()
+                                + " AFTER " + op + " ON " + table + " BEGIN "
+                                + "DELETE FROM " + rebuild + " WHERE id = NEW.id; "
+                                + "INSERT INTO " + rebuild + " SELECT " + selectList
+                                + " FROM " + table + " WHERE id = NEW.id; END;");
+                    }
+                    stmt.executeUpdate("CREATE TRIGGER " + rebuild + "_mirror_delete"
+                            + " AFTER DELETE ON " + table + " BEGIN "
+                            + "DELETE FROM " + rebuild + " WHERE id = OLD.id; END;");
+                }
+            });
+        }
+
+        long maxId = maxId(connections);
+        String copySql = "INSERT INTO " + rebuild + " SELECT " + selectList + " FROM " + table
+                + " WHERE id > ? AND id <= ? AND id NOT IN (SELECT id FROM " + rebuild + " WHERE id > ? AND id <= ?)";
+        long copied = 0;
+
+        // Rows changed after their chunk was copied reach the new table through the mirror triggers
+        for (long from = 0; from < maxId; from += chunkSize) {
+            long to = Math.min(from + chunkSize, maxId);
+            try (ConnectionManager.Lease lease = connections.writer();
+                 PreparedStatement ps = lease.connection().prepareStatement(copySql)) {
+                ps.setLong(1, from);
+                ps.setLong(2, to);
+                ps.setLong(3, from);
+                ps.setLong(4, to);
+                copied += ps.executeUpdate();
+            }
+        }
+
+        try (ConnectionManager.Lease lease = connections.writer()) {
+            Migration.inTransaction(lease.connection(), conn -> {
+                try (Statement stmt = conn.createStatement()) {
+                    long source = count(stmt, table);
+                    long target = count(stmt, rebuild);
+                    if (source != target) {
+                        throw new SQLException("Rebuild of " + table + " has " + target + " rows but " + table
+                                + " has " + source + "; the old table was left in place");
+                    }
+                    for (String op : List.of("insert", "update", "delete")) {
+                        stmt.executeUpdate("DROP TRIGGER IF EXISTS " + rebuild + "_mirror_" + op);
+                    }
+                    stmt.executeUpdate("DROP TABLE " + table);
+                    stmt.executeUpdate("ALTER TABLE " + rebuild + " RENAME TO " + table);
+                    for (String sql : afterSwap) {
+                        stmt.executeUpdate(sql);
+                    }
+                }
+            });
+        }
+
+        System.out.println("Rebuilt table " + table + ", " + copied + " rows copied in chunks of " + chunkSize);
+    }
+
+    private long maxId(ConnectionManager connections) throws SQLException {
+        try (ConnectionManager.Lease lease = connections.writer();
+             Statement stmt = lease.connection().createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(id), 0) FROM " + table)) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    private static long count(Statement stmt, String table) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM " + table)) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    /**
+     * True if the table already has the named column, which lets a rebuild
+     * step notice that it finished before its version was recorded.
+     */
+    static boolean hasColumn(Connection conn, String table, String column) throws SQLException {
+        try (ResultSet rs = conn.getMetaData().getColumns(null, null, table, column)) {
+            return rs.next();
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package org.example;
+
+/**
+ * A ledger entry waiting to be written to the transactions table.
+ * The amount is in cents. A null timestamp means "now" and is filled in by the database.
+ */
+public record Transaction(String type, long amount, String description, String userEmail, String timestamp) {
+
+    public Transaction(String type, long amount, String description, String userEmail) {
+        this(type, amount, description, userEmail, null);
+    }
+}
@@ -0,0 +1,155 @@
+package org.example;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Bulk insert path for the transactions table. Rows are sent with
+ * addBatch/executeBatch and committed once per batch instead of once per row.
+ * The writer connection is given back between batches so interactive
+ * debits and credits can get in while a long import is running.
+ *
+ * Descriptions not in the dictionary yet are added, with their category,
+ * in the same transaction just before the rows that use them (see
+ * {@link #intern}), so every row goes in tagged.
+ */
+public class TransactionBatchWriter {
+    // The description's dictionary entry tags the row with its id and category on the way in
+    static final String INSERT_SQL = """
+            INSERT INTO transactions(type, amount, description, user_email, timestamp, description_id, category_id)
+            VALUES(?1, ?2, ?3, ?4, COALESCE(?5, CURRENT_TIMESTAMP),
+                   (SELECT id FROM descriptions WHERE text = ?3),
+                   (SELECT category_id FROM descriptions WHERE text = ?3))
+            """;
+
+    private final ConnectionManager connections;
+    private final int batchSize;
+
+    public TransactionBatchWriter(ConnectionManager connections, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be at least 1");
+        }
+        this.connections = connections;
+        this.batchSize = batchSize;
+    }
+
+    public long writeAll(Iterable<Transaction> transactions) throws SQLException {
+        return writeAll(transactions.iterator());
+    }
+
+    public long writeAll(Stream<Transaction> transactions) throws SQLException {
+        return writeAll(transactions.iterator());
+    }
+
+    /**
+     * Writes every transaction and returns how many rows were inserted.
+     * Each batch commits on its own. If a batch fails, the batches before it
+     * stay committed and the exception says how many rows made it in.
+     */
+    public long writeAll(Iterator<Transaction> transactions) throws SQLException {
+        long written = 0;
+        while (transactions.hasNext()) {
+            try (ConnectionManager.Lease lease = connections.writer()) {
+                written += insertBatch(lease, transactions, batchSize);
+            } catch (SQLException e) {
+                throw new SQLException("Batch insert failed after " + written + " rows: " + e.getMessage(), e);
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Inserts up to limit rows from the iterator in one SQL transaction on an
+     * already leased writer connection. Returns the number of rows inserted.
+     */
+    static int insertBatch(ConnectionManager.Lease lease, Iterator<Transaction> transactions, int limit)
+            throws SQLException {
+        Connection conn = lease.connection();
+        PreparedStatement ps = lease.prepare(INSERT_SQL);
+        List<Transaction> batch = new ArrayList<>();
+        while (batch.size() < limit && transactions.hasNext()) {
+            batch.add(transactions.next());
+        }
+
+        conn.setAutoCommit(false);
+        try {
+            intern(lease, batch.stream().map(Transaction::description).toList());
+            for (Transaction t : batch) {
+                bind(ps, t);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+            conn.commit();
+            return batch.size();
+        } catch (SQLException e) {
+            ps.clearBatch();
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * Adds the descriptions that are not in the dictionary yet, each with the
+     * category {@link KeywordCategorizer} finds for it, on the writer lease
+     * and inside whatever transaction is open there. Call it before
+     * inserting rows with {@link #INSERT_SQL} or the ledger's conditional
+     * debit so they are tagged on the way in. New descriptions are
+     * categorized with {@link KeywordCategorizer#current}, so the rules are
+     * not compiled again unless they have changed.
+     */
+    static void intern(ConnectionManager.Lease lease, Collection<String> descriptions) throws SQLException {
+        KeywordCategorizer categorizer = null;
+        Set<String> seen = new HashSet<>();
+        for (String text : descriptions) {
+            if (text == null || !seen.add(text) || known(lease, text)) {
+                continue;
+            }
+            if (categorizer == null) {
+                categorizer = KeywordCategorizer.current(lease);
+            }
+            int category = categorizer.categorize(text);
+            PreparedStatement insert = lease.prepare(DescriptionBackfillJob.INTERN_SQL);
+            insert.setString(1, text);
+            if (category == KeywordCategorizer.UNCATEGORIZED) {
+                insert.setNull(2, Types.INTEGER);
+            } else {
+                insert.setInt(2, category);
+            }
+            insert.executeUpdate();
+        }
+    }
+
+    static void intern(ConnectionManager.Lease lease, String description) throws SQLException {
+        intern(lease, Collections.singleton(description));
+    }
+
+    /** Whether the description is in the dictionary already. */
+    static boolean known(ConnectionManager.Lease lease, String description) throws SQLException {
+        PreparedStatement lookup = lease.prepare(DescriptionBackfillJob.LOOKUP_SQL);
+        lookup.setString(1, description);
+        try (ResultSet rs = lookup.executeQuery()) {
+            return rs.next();
+        }
+    }
+
+    static void bind(PreparedStatement ps, Transaction t) throws SQLException {
+        ps.setString(1, t.type());
+        ps.setLong(2, t.amount());
+        ps.setString(3, t.description());
+        ps.setString(4, t.userEmail());
+        ps.setString(5, t.timestamp());
+    }
+}
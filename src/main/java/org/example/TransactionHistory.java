@@ -0,0 +1,97 @@
+package org.example;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Pages through a user's transactions by seeking on (user_email, id)
+ * instead of OFFSET, so every page costs the same index range read no
+ * matter how deep into the history it is.
+ */
+public class TransactionHistory {
+    static final String OLDER_SQL = """
+            SELECT id, type, amount, description, timestamp FROM transactions
+            WHERE user_email = ? AND id < ?
+            ORDER BY id DESC
+            LIMIT ?
+            """;
+    static final String NEWER_SQL = """
+            SELECT id, type, amount, description, timestamp FROM transactions
+            WHERE user_email = ? AND id > ?
+            ORDER BY id ASC
+            LIMIT ?
+            """;
+
+    private final ConnectionManager connections;
+
+    public TransactionHistory(ConnectionManager connections) {
+        this.connections = connections;
+    }
+
+    /**
+     * The user's most recent transactions.
+     */
+    public HistoryPage latest(String email, int pageSize) throws SQLException {
+        return olderThan(email, Long.MAX_VALUE, pageSize);
+    }
+
+    /**
+     * The page of transactions just before the given cursor.
+     */
+    public HistoryPage olderThan(String email, long cursor, int pageSize) throws SQLException {
+        List<HistoryPage.Entry> rows = fetch(OLDER_SQL, email, cursor, pageSize);
+        boolean more = trim(rows, pageSize);
+
+        Long older = more ? rows.get(rows.size() - 1).id() : null;
+        // A cursor below MAX_VALUE came from a row, so something newer exists
+        Long newer = cursor != Long.MAX_VALUE && !rows.isEmpty() ? rows.get(0).id() : null;
+        return new HistoryPage(rows, older, newer);
+    }
+
+    /**
+     * The page of transactions just after the given cursor, still newest first.
+     */
+    public HistoryPage newerThan(String email, long cursor, int pageSize) throws SQLException {
+        List<HistoryPage.Entry> rows = fetch(NEWER_SQL, email, cursor, pageSize);
+        boolean more = trim(rows, pageSize);
+        Collections.reverse(rows);
+
+        Long newer = more ? rows.get(0).id() : null;
+        Long older = rows.isEmpty() ? null : rows.get(rows.size() - 1).id();
+        return new HistoryPage(rows, older, newer);
+    }
+
+    // One extra row tells us whether another page exists without a COUNT
+    private List<HistoryPage.Entry> fetch(String sql, String email, long cursor, int pageSize) throws SQLException {
+        List<HistoryPage.Entry> rows = new ArrayList<>(pageSize + 1);
+        try (ConnectionManager.Lease lease = connections.reader()) {
+            PreparedStatement ps = lease.prepare(sql);
+            ps.setString(1, email);
+            ps.setLong(2, cursor);
+            ps.setInt(3, pageSize + 1);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    rows.add(new HistoryPage.Entry(
+                            rs.getLong(1),
+                            rs.getString(2),
+                            rs.getLong(3),
+                            rs.getString(4),
+                            rs.getString(5)));
+                }
+            }
+        }
+        return rows;
+    }
+
+    private static boolean trim(List<HistoryPage.Entry> rows, int pageSize) {
+        if (rows.size() <= pageSize) {
+            return false;
+        }
+        rows.remove(rows.size() - 1);
+        return true;
+    }
+}
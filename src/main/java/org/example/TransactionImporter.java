@@ -0,0 +1,362 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Loads bank statements into the transactions table.
+ *
+ * CSV files are memory-mapped and cut into chunks on line boundaries. Chunks
+ * are parsed and validated in parallel and written in file order through a
+ * {@link TransactionBatchWriter}, so parsing of later chunks overlaps with
+ * writing of earlier ones. OFX files are parsed per STMTTRN block.
+ *
+ * Rows are checked with the same {@link TransactionRules} as the console.
+ * The balance check is skipped: imported rows are history that already happened.
+ */
+public class TransactionImporter {
+    private static final long CHUNK_SIZE = 8L << 20;
+    private static final int MAX_REJECTED_CONTENT = 200;
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final ConnectionManager connections;
+    private final int batchSize;
+    private final ForkJoinPool pool = ForkJoinPool.commonPool();
+
+    public TransactionImporter(ConnectionManager connections, int batchSize) {
+        this.connections = connections;
+        this.batchSize = batchSize;
+    }
+
+    private record ParsedChunk(List<Transaction> accepted, List<ImportReport.Rejection> rejected,
+                               long rows, long lines) {
+    }
+
+    // ====== CSV ======
+
+    /**
+     * Imports a CSV statement in the layout written by {@link CsvExporter}
+     * (Date,Description,Type,Amount) into the given user's account.
+     */
+    public ImportReport importCsv(Path file, String userEmail) throws IOException, SQLException {
+        long start = System.nanoTime();
+        TransactionBatchWriter writer = new TransactionBatchWriter(connections, batchSize);
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            List<long[]> ranges = split(channel);
+            int window = pool.getParallelism() * 2;   // bounds how many parsed chunks wait in memory
+
+            Deque<CompletableFuture<ParsedChunk>> inFlight = new ArrayDeque<>();
+            List<ImportReport.Rejection> rejected = new ArrayList<>();
+            long rowsRead = 0;
+            long imported = 0;
+            long linesBefore = 0;
+            int submitted = 0;
+
+            for (int i = 0; i < ranges.size(); i++) {
+                while (submitted < ranges.size() && submitted < i + window) {
+                    long[] range = ranges.get(submitted);
+                    boolean first = submitted == 0;
+                    inFlight.addLast(CompletableFuture.supplyAsync(
+                            () -> parseCsvChunk(channel, range[0], range[1], first, userEmail), pool));
+                    submitted++;
+                }
+
+                ParsedChunk chunk = join(inFlight.removeFirst());
+                imported += writer.writeAll(chunk.accepted());
+                for (ImportReport.Rejection r : chunk.rejected()) {
+                    rejected.add(new ImportReport.Rejection(linesBefore + r.line(), r.reason(), r.content()));
+                }
+                rowsRead += chunk.rows();
+                linesBefore += chunk.lines();
+            }
+
+            return new ImportReport(rowsRead, imported, rejected, Duration.ofNanos(System.nanoTime() - start));
+        }
+    }
+
+    // Cuts the file into ~CHUNK_SIZE ranges that each end just after a newline
+    private static List<long[]> split(FileChannel channel) throws IOException {
+        long size = channel.size();
+        List<long[]> ranges = new ArrayList<>();
+        ByteBuffer probe = ByteBuffer.allocate(64 * 1024);
+
+        long pos = 0;
+        while (pos < size) {
+            long end = Math.min(pos + CHUNK_SIZE, size);
+            while (end < size) {
+                probe.clear();
+                int read = channel.read(probe, end);
+                int newline = -1;
+                for (int i = 0; i < read; i++) {
+                    if (probe.get(i) == '\n') {
+                        newline = i;
+                        break;
+                    }
+                }
+                if (newline >= 0) {
+                    end += newline + 1;
+                    break;
+                }
+                end += read;
+            }
+            ranges.add(new long[]{pos, end});
+            pos = end;
+        }
+        return ranges;
+    }
+
+    private static ParsedChunk parseCsvChunk(FileChannel channel, long from, long to,
+                                             boolean firstChunk, String userEmail) {
+        CharBuffer text;
+        try {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+            text = StandardCharsets.UTF_8.decode(mapped);
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        }
+
+        List<Transaction> accepted = new ArrayList<>();
+        List<ImportReport.Rejection> rejected = new ArrayList<>();
+        long rows = 0;
+        long lineNo = 0;
+
+        int lineStart = 0;
+        int length = text.length();
+        while (lineStart < length) {
+            int lineEnd = lineStart;
+            while (lineEnd < length && text.charAt(lineEnd) != '\n') {
+                lineEnd++;
+            }
+            int contentEnd = lineEnd;
+            if (contentEnd > lineStart && text.charAt(contentEnd - 1) == '\r') {
+                contentEnd--;
+            }
+            String line = text.subSequence(lineStart, contentEnd).toString();
+            lineStart = lineEnd + 1;
+            lineNo++;
+
+            if (line.isBlank() || (firstChunk && lineNo == 1 && line.regionMatches(true, 0, "Date,", 0, 5))) {
+                continue;
+            }
+            rows++;
+
+            List<String> fields = parseCsvLine(line);
+            String reason;
+            if (fields == null) {
+                reason = "malformed quoting";
+            } else if (fields.size() != 4) {
+                reason = "expected 4 fields, found " + fields.size();
+            } else {
+                reason = addRow(accepted, fields.get(0), fields.get(1), fields.get(2), fields.get(3), userEmail);
+            }
+            if (reason != null) {
+                rejected.add(new ImportReport.Rejection(lineNo, reason, truncate(line)));
+            }
+        }
+        return new ParsedChunk(accepted, rejected, rows, lineNo);
+    }
+
+    /**
+     * Splits one RFC 4180 line into fields. Returns null for an unterminated
+     * quote; quoted line breaks are not supported by the chunked reader.
+     */
+    static List<String> parseCsvLine(String line) {
+        List<String> fields = new ArrayList<>(4);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            return null;
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    // Validates one row and adds it to accepted; returns the rejection reason otherwise
+    private static String addRow(List<Transaction> accepted, String date, String description,
+                                 String type, String amount, String userEmail) {
+        String timestamp = normalizeTimestamp(date.trim());
+        if (timestamp == null) {
+            return "invalid date " + date;
+        }
+
+        long value;
+        try {
+            value = Money.parseCents(amount);
+        } catch (NumberFormatException | ArithmeticException e) {
+            return "invalid amount " + amount;
+        }
+
+        String normalizedType = type.trim().equalsIgnoreCase("debit") ? "Debit"
+                : type.trim().equalsIgnoreCase("credit") ? "Credit"
+                : type.trim();
+        String reason = TransactionRules.validate(normalizedType, value, description);
+        if (reason != null) {
+            return reason;
+        }
+
+        accepted.add(new Transaction(normalizedType, value, description, userEmail, timestamp));
+        return null;
+    }
+
+    private static String normalizeTimestamp(String value) {
+        try {
+            if (value.length() == 10) {
+                return LocalDate.parse(value).atStartOfDay().format(TIMESTAMP);
+            }
+            return LocalDateTime.parse(value, TIMESTAMP).format(TIMESTAMP);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    // ====== OFX ======
+
+    /**
+     * Imports the STMTTRN entries of an OFX (SGML or XML flavour) statement.
+     * Negative TRNAMT becomes a Debit, positive a Credit; NAME is used as the
+     * description, falling back to MEMO.
+     */
+    public ImportReport importOfx(Path file, String userEmail) throws IOException, SQLException {
+        long start = System.nanoTime();
+
+        String text;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("OFX file too large: " + channel.size() + " bytes");
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            text = StandardCharsets.UTF_8.decode(mapped).toString();
+        }
+
+        List<String> blocks = new ArrayList<>();
+        int pos = 0;
+        while ((pos = text.indexOf("<STMTTRN>", pos)) >= 0) {
+            int end = text.indexOf("</STMTTRN>", pos);
+            if (end < 0) {
+                end = text.length();
+            }
+            blocks.add(text.substring(pos, end));
+            pos = end;
+        }
+
+        List<ParsedChunk> parsed = blocks.parallelStream()
+                .map(block -> parseOfxBlock(block, userEmail))
+                .toList();
+
+        List<Transaction> accepted = new ArrayList<>();
+        List<ImportReport.Rejection> rejected = new ArrayList<>();
+        for (int i = 0; i < parsed.size(); i++) {
+            accepted.addAll(parsed.get(i).accepted());
+            for (ImportReport.Rejection r : parsed.get(i).rejected()) {
+                rejected.add(new ImportReport.Rejection(i + 1, r.reason(), r.content()));
+            }
+        }
+
+        long imported = new TransactionBatchWriter(connections, batchSize).writeAll(accepted);
+        return new ImportReport(blocks.size(), imported, rejected, Duration.ofNanos(System.nanoTime() - start));
+    }
+
+    private static ParsedChunk parseOfxBlock(String block, String userEmail) {
+        List<Transaction> accepted = new ArrayList<>(1);
+        List<ImportReport.Rejection> rejected = new ArrayList<>(0);
+
+        String posted = ofxValue(block, "DTPOSTED");
+        String amount = ofxValue(block, "TRNAMT");
+        String name = ofxValue(block, "NAME");
+        String description = name != null ? name : ofxValue(block, "MEMO");
+
+        String reason;
+        if (posted == null || posted.length() < 8 || amount == null || description == null) {
+            reason = "missing DTPOSTED, TRNAMT or NAME/MEMO";
+        } else {
+            String date = posted.substring(0, 4) + "-" + posted.substring(4, 6) + "-" + posted.substring(6, 8);
+            if (posted.length() >= 14 && Character.isDigit(posted.charAt(13))) {
+                date += " " + posted.substring(8, 10) + ":" + posted.substring(10, 12) + ":" + posted.substring(12, 14);
+            }
+            String type = amount.startsWith("-") ? "Debit" : "Credit";
+            String magnitude = amount.startsWith("-") || amount.startsWith("+") ? amount.substring(1) : amount;
+            reason = addRow(accepted, date, description, type, magnitude, userEmail);
+        }
+
+        if (reason != null) {
+            rejected.add(new ImportReport.Rejection(0, reason, truncate(block)));
+        }
+        return new ParsedChunk(accepted, rejected, 1, 1);
+    }
+
+    // Value of <TAG>value, up to the next tag or line break (closing tags are optional in SGML OFX)
+    private static String ofxValue(String block, String tag) {
+        String open = "<" + tag + ">";
+        int start = block.indexOf(open);
+        if (start < 0) {
+            return null;
+        }
+        start += open.length();
+        int end = start;
+        while (end < block.length() && block.charAt(end) != '<' && block.charAt(end) != '\n'
+                && block.charAt(end) != '\r') {
+            end++;
+        }
+        String value = block.substring(start, end).trim();
+        return value.isEmpty() ? null : value;
+    }
+
+    private static String truncate(String content) {
+        String flat = content.replace('\n', ' ').replace('\r', ' ').trim();
+        return flat.length() <= MAX_REJECTED_CONTENT ? flat : flat.substring(0, MAX_REJECTED_CONTENT) + "...";
+    }
+
+    private static ParsedChunk join(CompletableFuture<ParsedChunk> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            throw e;
+        }
+    }
+}
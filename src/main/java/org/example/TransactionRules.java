@@ -0,0 +1,32 @@
+package org.example;
+
+/**
+ * Input rules for debits and credits, shared by the console menu and the importers.
+ */
+public final class TransactionRules {
+    public static final long MAX_DEBIT_CENTS = 1_000_000_00L;
+    public static final int MAX_DESCRIPTION_LENGTH = 100;
+
+    private TransactionRules() {
+    }
+
+    /**
+     * Returns why the transaction is not acceptable, or null if it is.
+     * The amount is in cents.
+     */
+    public static String validate(String type, long amount, String description) {
+        if (!"Debit".equals(type) && !"Credit".equals(type)) {
+            return "unknown type " + type;
+        }
+        if (amount <= 0) {
+            return "amount must be positive";
+        }
+        if ("Debit".equals(type) && amount > MAX_DEBIT_CENTS) {
+            return "debit exceeds " + Money.format(MAX_DEBIT_CENTS);
+        }
+        if (description == null || description.length() > MAX_DESCRIPTION_LENGTH) {
+            return "description longer than " + MAX_DESCRIPTION_LENGTH + " characters";
+        }
+        return null;
+    }
+}
@@ -0,0 +1,94 @@
+package org.example;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded LRU cache of user identities by email, with a time-to-live.
+ *
+ * Unknown emails are cached too, for a shorter time, so repeated lookups
+ * of a mistyped address do not reach the database either. Anything that
+ * creates or changes a user must call {@link #invalidate}; the TTL only
+ * bounds how stale an entry can get when another process changes the row.
+ */
+public class UserCache {
+    static final String SQL = "SELECT id, name, email, password FROM users WHERE email = ?";
+
+    private record Entry(UserIdentity identity, long expiresAt) {
+    }
+
+    private final ConnectionManager connections;
+    private final long ttlNanos;
+    private final long negativeTtlNanos;
+    private final LinkedHashMap<String, Entry> entries;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    // Bumped by invalidate so a load that raced with it does not put back the old row
+    private long generation;
+
+    public UserCache(ConnectionManager connections, int capacity, long ttlSeconds, long negativeTtlSeconds) {
+        this.connections = connections;
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+        this.negativeTtlNanos = TimeUnit.SECONDS.toNanos(negativeTtlSeconds);
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    public Optional<UserIdentity> get(String email) throws SQLException {
+        long loadGeneration;
+        synchronized (this) {
+            Entry entry = entries.get(email);
+            if (entry != null && entry.expiresAt() - System.nanoTime() > 0) {
+                hits.increment();
+                return Optional.ofNullable(entry.identity());
+            }
+            misses.increment();
+            loadGeneration = generation;
+        }
+
+        UserIdentity identity = load(email);
+        long ttl = identity == null ? negativeTtlNanos : ttlNanos;
+        synchronized (this) {
+            if (generation == loadGeneration) {
+                entries.put(email, new Entry(identity, System.nanoTime() + ttl));
+            }
+        }
+        return Optional.ofNullable(identity);
+    }
+
+    public synchronized void invalidate(String email) {
+        entries.remove(email);
+        generation++;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        generation++;
+    }
+
+    public CacheStats stats() {
+        return new CacheStats(hits.sum(), misses.sum());
+    }
+
+    private UserIdentity load(String email) throws SQLException {
+        try (ConnectionManager.Lease lease = connections.reader()) {
+            PreparedStatement ps = lease.prepare(SQL);
+            ps.setString(1, email);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next()
+                        ? new UserIdentity(rs.getInt(1), rs.getString(2), rs.getString(3), rs.getString(4))
+                        : null;
+            }
+        }
+    }
+}
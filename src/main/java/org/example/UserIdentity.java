@@ -0,0 +1,7 @@
+package org.example;
+
+/**
+ * What the ledger needs to know about a user on almost every request.
+ */
+public record UserIdentity(int id, String name, String email, String passwordHash) {
+}
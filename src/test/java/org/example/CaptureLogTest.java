@@ -0,0 +1,169 @@
+package org.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class CaptureLogTest {
+    private static final String BALANCE_SQL = "SELECT balance FROM account_balances WHERE user_email = ?";
+    private static final List<String> USERS = List.of("a@example.com", "b@example.com", "c@example.com");
+    private static final int RECORDS = 1000;
+
+    @Test
+    void undrainedRecordsAreReplayedExactlyOnce(@TempDir Path dir) throws Exception {
+        Path live = dir.resolve("live");
+        Path snapshot = dir.resolve("snapshot");
+        Path crashed = dir.resolve("crashed");
+        CaptureConfig liveConfig = config(live);
+        CaptureConfig crashedConfig = config(crashed);
+
+        // Capture with the drainer shut out of the writer, and copy the segments
+        // as a crash would leave them: every record appended, none drained
+        ConnectionManager first = TestDatabase.migrated(dir.resolve("first.db"));
+        CaptureLog log = new CaptureLog(first, liveConfig);
+        log.start();
+        long[] expected = new long[USERS.size()];
+        try (ConnectionManager.Lease writer = first.writer()) {
+            for (int i = 0; i < RECORDS; i++) {
+                int user = i % USERS.size();
+                long amount = 100 + i;
+                String type = i % 4 == 0 ? "Debit" : "Credit";
+                log.append(new Transaction(type, amount, "capture " + i, USERS.get(user)));
+                expected[user] += type.equals("Credit") ? amount : -amount;
+            }
+            assertEquals(0, log.drainedSeq());
+            copyFiles(live, snapshot);
+        }
+        log.close();
+        first.close();
+
+        ConnectionManager connections = TestDatabase.migrated(dir.resolve("second.db"));
+        addUsers(connections);
+        copyFiles(snapshot, crashed);
+        CaptureLog replay = new CaptureLog(connections, crashedConfig);
+        replay.start();
+        for (int user = 0; user < USERS.size(); user++) {
+            String email = USERS.get(user);
+            assertEquals(expected[user], replay.balance(email, e -> storedBalance(connections, e)));
+        }
+        replay.close();
+        assertEquals(RECORDS, replay.drainedSeq());
+        assertEquals(RECORDS, countTransactions(connections));
+        assertStoredBalances(connections, expected);
+        assertEquals(0, countSegments(crashed));
+
+        // Crash after the drain committed but before its segments were deleted:
+        // the checkpoint says they are done, so nothing is applied twice
+        copyFiles(snapshot, crashed);
+        CaptureLog restarted = new CaptureLog(connections, crashedConfig);
+        restarted.start();
+        restarted.close();
+        assertEquals(RECORDS, countTransactions(connections));
+        assertStoredBalances(connections, expected);
+        assertEquals(0, countSegments(crashed));
+        connections.close();
+    }
+
+    @Test
+    void damagedRecordIsSkippedAndNoLongerCounted(@TempDir Path dir) throws Exception {
+        Path live = dir.resolve("live");
+        ConnectionManager connections = TestDatabase.migrated(dir.resolve("ledger.db"));
+        addUsers(connections);
+        String email = USERS.get(0);
+        // Batches of one record: with the writer held, the drainer can read at most
+        // record 1 before it has to wait, so it reads record 5 after the damage
+        CaptureLog log = new CaptureLog(connections,
+                new CaptureConfig(live, FsyncPolicy.everyRecords(100), 256, 1, 10));
+        log.start();
+        try (ConnectionManager.Lease writer = connections.writer()) {
+            for (int i = 1; i <= 10; i++) {
+                log.append(new Transaction("Credit", i * 100L, "capture " + i, email));
+            }
+            assertEquals(5500, log.balance(email, e -> storedBalance(connections, e)));
+            // Overwrite the first byte of record 5's description (strings start at
+            // byte 30, the description after the email) behind the map's back
+            Path segment;
+            try (Stream<Path> files = Files.list(live)) {
+                segment = files.filter(f -> f.getFileName().toString().endsWith(".seg")).findFirst().orElseThrow();
+            }
+            try (RandomAccessFile raf = new RandomAccessFile(segment.toFile(), "rw")) {
+                raf.seek(4L * CaptureLog.RECORD_SIZE + 30 + CaptureLog.MAX_EMAIL_BYTES);
+                raf.write('X');
+            }
+        }
+        log.close();
+
+        assertEquals(10, log.drainedSeq());
+        assertEquals(9, countTransactions(connections));
+        assertEquals(5500 - 500, storedBalance(connections, email));
+        assertEquals(5500 - 500, log.balance(email, e -> storedBalance(connections, e)));
+        connections.close();
+    }
+
+    private static CaptureConfig config(Path dir) {
+        return new CaptureConfig(dir, FsyncPolicy.everyRecords(100), 256, 300, 10);
+    }
+
+    private static void copyFiles(Path from, Path to) throws IOException {
+        Files.createDirectories(to);
+        try (Stream<Path> files = Files.list(from)) {
+            for (Path file : files.toList()) {
+                Files.copy(file, to.resolve(file.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+    }
+
+    private static long countSegments(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(f -> f.getFileName().toString().endsWith(".seg")).count();
+        }
+    }
+
+    private static void addUsers(ConnectionManager connections) throws SQLException {
+        try (ConnectionManager.Lease lease = connections.writer()) {
+            PreparedStatement ps = lease.prepare("INSERT INTO users (name, email, password) VALUES (?, ?, ?)");
+            for (String email : USERS) {
+                ps.setString(1, email.substring(0, 1));
+                ps.setString(2, email);
+                ps.setString(3, "x");
+                ps.executeUpdate();
+            }
+        }
+    }
+
+    private static long storedBalance(ConnectionManager connections, String email) throws SQLException {
+        try (ConnectionManager.Lease lease = connections.reader()) {
+            PreparedStatement ps = lease.prepare(BALANCE_SQL);
+            ps.setString(1, email);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
+
+    private static void assertStoredBalances(ConnectionManager connections, long[] expected) throws SQLException {
+        for (int user = 0; user < USERS.size(); user++) {
+            assertEquals(expected[user], storedBalance(connections, USERS.get(user)), USERS.get(user));
+        }
+    }
+
+    private static long countTransactions(ConnectionManager connections) throws SQLException {
+        try (ConnectionManager.Lease lease = connections.reader()) {
+            try (ResultSet rs = lease.prepare("SELECT COUNT(*) FROM transactions").executeQuery()) {
+                rs.next();
+                return rs.getLong(1);
+            }
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package org.example;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class GroupCommitWriterTest {
+    private static final String EMAIL = "a@example.com";
+
+    @Test
+    void failedBatchFailsEveryFutureAndTheWriterCarriesOn(@TempDir Path dir) throws Exception {
+        ConnectionManager connections = TestDatabase.migrated(dir.resolve("group.db"));
+        addUser(connections);
+        GroupCommitWriter writer = new GroupCommitWriter(connections, 50_000, 64);
+
+        // The row without a type breaks the whole batch, and the batch shares its window
+        List<CompletableFuture<Boolean>> batch = new ArrayList<>();
+        batch.add(writer.submit(new Transaction(null, 100, "broken", EMAIL)));
+        for (int i = 0; i < 10; i++) {
+            batch.add(writer.submit(new Transaction("Credit", 100, "ride along", EMAIL)));
+        }
+        for (CompletableFuture<Boolean> future : batch) {
+            assertThrows(ExecutionException.class, () -> future.get(10, TimeUnit.SECONDS));
+        }
+
+        assertTrue(writer.submit(new Transaction("Credit", 100, "after", EMAIL)).get(10, TimeUnit.SECONDS));
+        writer.close();
+        connections.close();
+    }
+
+    @Test
+    void rowsSubmittedAfterCloseFailStraightAway(@TempDir Path dir) throws Exception {
+        ConnectionManager connections = TestDatabase.migrated(dir.resolve("group.db"));
+        addUser(connections);
+        GroupCommitWriter writer = new GroupCommitWriter(connections, 1_000, 64);
+        writer.close();
+
+        CompletableFuture<Boolean> late = writer.submit(new Transaction("Credit", 100, "late", EMAIL));
+        ExecutionException e = assertThrows(ExecutionException.class, () -> late.get(10, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof IllegalStateException);
+        connections.close();
+    }
+
+    private static void addUser(ConnectionManager connections) throws Exception {
+        try (ConnectionManager.Lease lease = connections.writer(); Statement s = lease.connection().createStatement()) {
+            s.executeUpdate("INSERT INTO users (name, email, password) VALUES ('a', '" + EMAIL + "', 'x')");
+        }
+    }
+}
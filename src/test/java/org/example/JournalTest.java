@@ -0,0 +1,120 @@
+package org.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class JournalTest {
+    private static final List<String> USERS = List.of("a@example.com", "b@example.com", "c@example.com");
+    private static final LocalDate FIRST_DAY = LocalDate.of(2026, 1, 1);
+    private static final int DAYS = 120;
+    private static final int TRANSACTIONS = 600;
+
+    @Test
+    void postingsOfEveryTransactionSumToZero(@TempDir Path dir) throws Exception {
+        ConnectionManager connections = TestDatabase.migrated(dir.resolve("journal.db"));
+        insertHistory(connections, new Random(22), TRANSACTIONS);
+
+        try (ConnectionManager.Lease lease = connections.reader(); Statement s = lease.connection().createStatement()) {
+            try (ResultSet rs = s.executeQuery("""
+                    SELECT COUNT(*) FROM (
+                        SELECT transaction_id FROM journal_postings
+                        GROUP BY transaction_id
+                        HAVING SUM(amount) <> 0 OR COUNT(*) <> 2)
+                    """)) {
+                rs.next();
+                assertEquals(0, rs.getLong(1), "transactions whose postings do not balance");
+            }
+            try (ResultSet rs = s.executeQuery("""
+                    SELECT COUNT(*) FROM transactions t
+                    WHERE NOT EXISTS (SELECT 1 FROM journal_postings p WHERE p.transaction_id = t.id)
+                    """)) {
+                rs.next();
+                assertEquals(0, rs.getLong(1), "transactions without postings");
+            }
+        }
+        assertEquals(0, new Journal(connections).trialBalance());
+        connections.close();
+    }
+
+    @Test
+    void snapshotEqualsSumOfPostingsBeforeIt(@TempDir Path dir) throws Exception {
+        ConnectionManager connections = TestDatabase.migrated(dir.resolve("journal.db"));
+        Random random = new Random(22);
+        insertHistory(connections, random, TRANSACTIONS);
+
+        JournalSnapshotJob job = new JournalSnapshotJob(connections, 2);
+        JobScheduler scheduler = new JobScheduler(connections, Clock.systemUTC(), 1);
+        for (int month = 1; month <= 4; month++) {
+            LocalDate asOf = FIRST_DAY.plusMonths(month);
+            job.run(new ScheduledJob.Context("journal-snapshots", asOf.atStartOfDay(), 0, scheduler));
+        }
+        // Backdated rows land before snapshots already taken, which the trigger must correct
+        insertHistory(connections, random, TRANSACTIONS / 4);
+
+        int snapshots = 0;
+        Journal journal = new Journal(connections);
+        try (ConnectionManager.Lease lease = connections.reader(); Statement s = lease.connection().createStatement();
+             ResultSet rs = s.executeQuery("SELECT account, as_of, balance FROM balance_snapshots")) {
+            while (rs.next()) {
+                String account = rs.getString(1);
+                LocalDate asOf = LocalDate.parse(rs.getString(2));
+                long postings = sumOfPostingsBefore(connections, account, asOf);
+                assertEquals(postings, rs.getLong(3), account + " as of " + asOf);
+                assertEquals(postings, journal.balanceAsOf(account, asOf.minusDays(1)).balance());
+                snapshots++;
+            }
+        }
+        assertEquals((USERS.size() + 1) * 4, snapshots);
+        connections.close();
+    }
+
+    // Credits and debits on random days in the test's months, in random order
+    private static void insertHistory(ConnectionManager connections, Random random, int count) throws SQLException {
+        try (ConnectionManager.Lease lease = connections.writer()) {
+            Migration.inTransaction(lease.connection(), conn -> {
+                try (Statement s = conn.createStatement()) {
+                    for (String email : USERS) {
+                        s.executeUpdate("INSERT OR IGNORE INTO users (name, email, password) VALUES ('u', '"
+                                + email + "', 'x')");
+                    }
+                }
+                PreparedStatement insert = lease.prepare(
+                        "INSERT INTO transactions (type, amount, description, user_email, timestamp) VALUES (?, ?, ?, ?, ?)");
+                for (int i = 0; i < count; i++) {
+                    insert.setString(1, random.nextInt(3) == 0 ? "Debit" : "Credit");
+                    insert.setLong(2, 1 + random.nextInt(100_000));
+                    insert.setString(3, "journal " + i);
+                    insert.setString(4, USERS.get(random.nextInt(USERS.size())));
+                    insert.setString(5, FIRST_DAY.plusDays(random.nextInt(DAYS)) + " "
+                            + String.format("%02d:%02d:00", random.nextInt(24), random.nextInt(60)));
+                    insert.executeUpdate();
+                }
+            });
+        }
+    }
+
+    private static long sumOfPostingsBefore(ConnectionManager connections, String account, LocalDate day)
+            throws SQLException {
+        try (ConnectionManager.Lease lease = connections.reader()) {
+            PreparedStatement ps = lease.prepare(
+                    "SELECT COALESCE(SUM(amount), 0) FROM journal_postings WHERE account = ? AND posted_at < ?");
+            ps.setString(1, account);
+            ps.setString(2, day.toString());
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                return rs.getLong(1);
+            }
+        }
+    }
+}
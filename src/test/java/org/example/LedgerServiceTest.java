@@ -0,0 +1,132 @@
+package org.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class LedgerServiceTest {
+    private static final String EMAIL = "a@example.com";
+    private static final long FUNDS = 50_000;
+    private static final long DEBIT = 7;
+    private static final long REPAYMENT = 50;
+    private static final int THREADS = 16;
+    private static final int ATTEMPTS = 500;
+
+    @Test
+    void concurrentDebitsAndRepaymentsNeverOverdraw(@TempDir Path dir) throws Exception {
+        ConnectionManager connections = TestDatabase.migrated(dir.resolve("ledger.db"));
+        race(connections, null);
+        connections.close();
+    }
+
+    @Test
+    void concurrentDebitsAndRepaymentsNeverOverdrawWithGroupCommit(@TempDir Path dir) throws Exception {
+        ConnectionManager connections = TestDatabase.migrated(dir.resolve("ledger.db"));
+        GroupCommitWriter groupCommit = new GroupCommitWriter(connections, 500, 64);
+        race(connections, groupCommit);
+        groupCommit.close();
+        connections.close();
+    }
+
+    // Debits and loan repayments on one account from many threads ask for
+    // several times the balance; exactly what was granted must have gone in
+    private static void race(ConnectionManager connections, GroupCommitWriter groupCommit) throws Exception {
+        int userId;
+        try (ConnectionManager.Lease lease = connections.writer(); Statement s = lease.connection().createStatement()) {
+            s.executeUpdate("INSERT INTO users (name, email, password) VALUES ('a', '" + EMAIL + "', 'x')");
+            try (ResultSet rs = s.executeQuery("SELECT id FROM users WHERE email = '" + EMAIL + "'")) {
+                rs.next();
+                userId = rs.getInt(1);
+            }
+        }
+        LedgerService ledger = new LedgerService(connections, new UserCache(connections, 100, 60, 60),
+                new LoanBlocklist(connections), groupCommit, null, 8);
+        RepaymentProcessor repayments = new RepaymentProcessor(connections, ledger, 10);
+        long principal = 10_000_000;
+        new LoanEngine(connections).create(userId, principal, 0, AmortizationMethod.FLAT,
+                Amortization.schedule(AmortizationMethod.FLAT, principal, 0, 12, LocalDate.now()));
+        assertTrue(ledger.credit(EMAIL, FUNDS, "salary").succeeded());
+
+        AtomicLong debited = new AtomicLong();
+        AtomicLong repaid = new AtomicLong();
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            boolean repays = t % 4 == 0;
+            futures.add(pool.submit(() -> {
+                for (int i = 0; i < ATTEMPTS; i++) {
+                    if (repays) {
+                        repaid.addAndGet(repayments.repay(EMAIL, REPAYMENT, AllocationPolicy.OLDEST_FIRST).applied());
+                    } else if (ledger.debit(EMAIL, DEBIT, "coffee").succeeded()) {
+                        debited.addAndGet(DEBIT);
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(2, TimeUnit.MINUTES);
+        }
+        pool.shutdown();
+
+        long asked = THREADS / 4 * ATTEMPTS * REPAYMENT + (THREADS - THREADS / 4) * ATTEMPTS * DEBIT;
+        assertTrue(asked > 2 * FUNDS, "the race must ask for more than the balance");
+        assertEquals(FUNDS - debited.get() - repaid.get(), ledger.balance(EMAIL));
+        assertTrue(ledger.balance(EMAIL) >= 0);
+        assertEquals(debited.get() + repaid.get(), sumOfDebits(connections));
+        assertTrue(lowestRunningBalance(connections) >= 0);
+        assertEquals(repaid.get(), sumOfLoanPayments(connections));
+    }
+
+    private static long sumOfLoanPayments(ConnectionManager connections) throws SQLException {
+        try (ConnectionManager.Lease lease = connections.reader()) {
+            try (ResultSet rs = lease.prepare("SELECT COALESCE(SUM(amount), 0) FROM loan_payments").executeQuery()) {
+                rs.next();
+                return rs.getLong(1);
+            }
+        }
+    }
+
+    private static long sumOfDebits(ConnectionManager connections) throws SQLException {
+        try (ConnectionManager.Lease lease = connections.reader()) {
+            PreparedStatement ps = lease.prepare(
+                    "SELECT COALESCE(SUM(amount), 0) FROM transactions WHERE type = 'Debit' AND user_email = ?");
+            ps.setString(1, EMAIL);
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                return rs.getLong(1);
+            }
+        }
+    }
+
+    // The balance after each transaction in commit order, at its lowest
+    private static long lowestRunningBalance(ConnectionManager connections) throws SQLException {
+        try (ConnectionManager.Lease lease = connections.reader()) {
+            PreparedStatement ps = lease.prepare("""
+                    SELECT MIN(running) FROM (
+                        SELECT SUM(CASE WHEN type = 'Credit' THEN amount ELSE -amount END) OVER (ORDER BY id) AS running
+                        FROM transactions WHERE user_email = ?)
+                    """);
+            ps.setString(1, EMAIL);
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                return rs.getLong(1);
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package org.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class LoanReminderEngineTest {
+    private static final int LOANS = 25;
+    private static final int BATCH = 10;
+
+    @Test
+    void failedSweepLeavesNoPartialOutputAndRetryDoesNotDouble(@TempDir Path dir) throws Exception {
+        ConnectionManager connections = TestDatabase.migrated(dir.resolve("reminders.db"));
+        LocalDate due = addLoans(connections);
+        ReminderMailbox mailbox = new ReminderMailbox();
+        FileReminderSink file = new FileReminderSink(dir.resolve("reminders.tsv"));
+
+        new LoanReminderEngine(connections, 7, BATCH, List.of(mailbox)).sweep(due.minusDays(3));
+        assertEquals(1, mailbox.forUser(1).size());
+        assertEquals(3, mailbox.forUser(1).getFirst().daysLeft());
+
+        // Fails on the second batch, after the first reached the mailbox and the file
+        ReminderSink failing = new ReminderSink() {
+            private int batches;
+
+            @Override
+            public void send(List<LoanReminder> batch) throws IOException {
+                if (++batches == 2) {
+                    throw new IOException("mailer is down");
+                }
+            }
+        };
+        LoanReminderEngine broken = new LoanReminderEngine(connections, 7, BATCH, List.of(mailbox, file, failing));
+        assertThrows(IOException.class, () -> broken.sweep(due));
+        assertEquals(3, mailbox.forUser(1).getFirst().daysLeft(), "the earlier sweep stays in the mailbox");
+        assertEquals(List.of(), files(dir), "nothing written by the failed sweep");
+
+        LoanReminderEngine engine = new LoanReminderEngine(connections, 7, BATCH, List.of(mailbox, file));
+        assertEquals(LOANS, engine.sweep(due));
+        assertEquals(LOANS, engine.sweep(due));
+        assertEquals(0, mailbox.forUser(1).getFirst().daysLeft());
+        assertEquals(List.of(file.fileFor(due)), files(dir));
+        assertEquals(LOANS, Files.readAllLines(file.fileFor(due)).size());
+        connections.close();
+    }
+
+    // One loan per user, all with the same first due date, which is returned
+    private static LocalDate addLoans(ConnectionManager connections) throws Exception {
+        LoanEngine loans = new LoanEngine(connections);
+        LocalDate start = LocalDate.of(2026, 1, 15);
+        try (ConnectionManager.Lease lease = connections.writer(); Statement s = lease.connection().createStatement()) {
+            for (int u = 1; u <= LOANS; u++) {
+                s.executeUpdate("INSERT INTO users (name, email, password) VALUES ('u', 'u" + u + "@example.com', 'x')");
+            }
+        }
+        for (int u = 1; u <= LOANS; u++) {
+            loans.create(u, 120_000, 0, AmortizationMethod.FLAT,
+                    Amortization.schedule(AmortizationMethod.FLAT, 120_000, 0, 12, start));
+        }
+        try (ConnectionManager.Lease lease = connections.reader(); Statement s = lease.connection().createStatement();
+             ResultSet rs = s.executeQuery("SELECT MIN(due_date), MAX(due_date) FROM loans")) {
+            rs.next();
+            assertEquals(rs.getString(1), rs.getString(2));
+            return LocalDate.parse(rs.getString(1));
+        }
+    }
+
+    private static List<Path> files(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(f -> f.getFileName().toString().startsWith("reminders-")).toList();
+        }
+    }
+}
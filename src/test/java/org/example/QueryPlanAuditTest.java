@@ -0,0 +1,84 @@
+package org.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class QueryPlanAuditTest {
+
+    @Test
+    void hotQueriesUseIndexesOnFreshlyMigratedSchema(@TempDir Path dir) throws Exception {
+        ConnectionManager connections = TestDatabase.migrated(dir.resolve("ledger.db"));
+        try {
+            List<String> regressions = QueryPlanAudit.audit(connections);
+            assertEquals(List.of(), regressions, "Hot queries that scan or sort");
+        } finally {
+            connections.close();
+        }
+    }
+
+    @Test
+    void blocklistSearchesStrictlyBeforeTheDueDate(@TempDir Path dir) throws Exception {
+        ConnectionManager connections = TestDatabase.migrated(dir.resolve("ledger.db"));
+        try {
+            assertTrue(plan(connections, LoanBlocklist.SWEEP_SQL)
+                    .contains("SEARCH loans USING INDEX idx_loans_status_due (status=? AND due_date<?)"));
+            assertTrue(plan(connections, LoanBlocklist.USER_SQL)
+                    .contains("SEARCH loans USING INDEX idx_loans_status_due (status=? AND due_date<?)"));
+
+            LocalDate today = LocalDate.now();
+            LoanEngine loans = new LoanEngine(connections);
+            try (ConnectionManager.Lease lease = connections.writer(); Statement s = lease.connection().createStatement()) {
+                s.executeUpdate("INSERT INTO users (name, email, password) VALUES ('a', 'a@example.com', 'x')");
+                s.executeUpdate("INSERT INTO users (name, email, password) VALUES ('b', 'b@example.com', 'x')");
+            }
+            for (int user = 1; user <= 2; user++) {
+                loans.create(user, 120_000, 0, AmortizationMethod.FLAT,
+                        Amortization.schedule(AmortizationMethod.FLAT, 120_000, 0, 12, today));
+            }
+            // User 1 is due today, user 2 was due yesterday
+            try (ConnectionManager.Lease lease = connections.writer()) {
+                PreparedStatement ps = lease.prepare("UPDATE loans SET due_date = ? WHERE user_id = ?");
+                ps.setString(1, today.toString());
+                ps.setInt(2, 1);
+                ps.executeUpdate();
+                ps.setString(1, today.minusDays(1).toString());
+                ps.setInt(2, 2);
+                ps.executeUpdate();
+            }
+
+            LoanBlocklist blocklist = new LoanBlocklist(connections);
+            blocklist.refresh();
+            assertFalse(blocklist.isBlocked(1), "due today");
+            assertTrue(blocklist.isBlocked(2), "due yesterday");
+            blocklist.refreshUser(1);
+            blocklist.refreshUser(2);
+            assertFalse(blocklist.isBlocked(1), "due today");
+            assertTrue(blocklist.isBlocked(2), "due yesterday");
+        } finally {
+            connections.close();
+        }
+    }
+
+    private static List<String> plan(ConnectionManager connections, String sql) throws Exception {
+        List<String> steps = new ArrayList<>();
+        try (ConnectionManager.Lease lease = connections.reader();
+             PreparedStatement ps = lease.connection().prepareStatement("EXPLAIN QUERY PLAN " + sql);
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                steps.add(rs.getString("detail"));
+            }
+        }
+        return steps;
+    }
+}
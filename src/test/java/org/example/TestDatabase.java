@@ -0,0 +1,21 @@
+package org.example;
+
+import java.nio.file.Path;
+import java.sql.SQLException;
+
+/**
+ * A ledger database at the given path, usually in a test's temporary
+ * directory, migrated to the latest schema.
+ */
+final class TestDatabase {
+    private TestDatabase() {
+    }
+
+    static ConnectionManager migrated(Path file) throws SQLException {
+        DatabaseConfig config = new DatabaseConfig("jdbc:sqlite:" + file,
+                4, "NORMAL", -2000, 0, 5000, 64, false, 2000);
+        ConnectionManager connections = new ConnectionManager(config);
+        new SchemaMigrator(connections, Migrations.all()).migrate();
+        return connections;
+    }
+}
@@ -0,0 +1,104 @@
+package org.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TransactionBatchWriterTest {
+    private static final String EMAIL = "a@example.com";
+
+    @Test
+    void newDescriptionsAreInternedAndCategorizedOnTheWayIn(@TempDir Path dir) throws Exception {
+        ConnectionManager connections = TestDatabase.migrated(dir.resolve("writer.db"));
+        try (ConnectionManager.Lease lease = connections.writer(); Statement s = lease.connection().createStatement()) {
+            s.executeUpdate("INSERT INTO users (name, email, password) VALUES ('a', '" + EMAIL + "', 'x')");
+        }
+
+        long written = new TransactionBatchWriter(connections, 2).writeAll(List.of(
+                new Transaction("Credit", 500_000, "Salary", EMAIL),
+                new Transaction("Debit", 1_250, "Uber to airport", EMAIL),
+                new Transaction("Debit", 1_400, "Uber to airport", EMAIL),
+                new Transaction("Debit", 800, "Corner Grocer", EMAIL),
+                new Transaction("Debit", 999, "Something unheard of", EMAIL)));
+        assertEquals(5, written);
+
+        try (ConnectionManager.Lease lease = connections.reader(); Statement s = lease.connection().createStatement()) {
+            try (ResultSet rs = s.executeQuery("SELECT COUNT(*) FROM transactions WHERE description_id IS NULL")) {
+                rs.next();
+                assertEquals(0, rs.getLong(1), "rows left for the backfill");
+            }
+            try (ResultSet rs = s.executeQuery("SELECT COUNT(*) FROM descriptions")) {
+                rs.next();
+                assertEquals(4, rs.getLong(1));
+            }
+        }
+        assertEquals(4, category(connections, "Uber to airport"));
+        assertEquals(3, category(connections, "Corner Grocer"));
+        assertEquals(KeywordCategorizer.UNCATEGORIZED, category(connections, "Something unheard of"));
+        connections.close();
+    }
+
+    @Test
+    void declinedDebitLeavesNoDictionaryRow(@TempDir Path dir) throws Exception {
+        ConnectionManager connections = TestDatabase.migrated(dir.resolve("writer.db"));
+        try (ConnectionManager.Lease lease = connections.writer(); Statement s = lease.connection().createStatement()) {
+            s.executeUpdate("INSERT INTO users (name, email, password) VALUES ('a', '" + EMAIL + "', 'x')");
+
+            assertFalse(LedgerService.insertDebit(lease, new Transaction("Debit", 100, "Taxi home", EMAIL)));
+            assertFalse(TransactionBatchWriter.known(lease, "Taxi home"));
+
+            s.executeUpdate("INSERT INTO transactions (type, amount, description, user_email) VALUES ('Credit', 500, 'Salary', '"
+                    + EMAIL + "')");
+            assertTrue(LedgerService.insertDebit(lease, new Transaction("Debit", 100, "Taxi home", EMAIL)));
+            assertTrue(TransactionBatchWriter.known(lease, "Taxi home"));
+        }
+        assertEquals(4, category(connections, "Taxi home"));
+        connections.close();
+    }
+
+    @Test
+    void rulesAreCompiledAgainOnlyWhenTheyChange(@TempDir Path dir) throws Exception {
+        ConnectionManager connections = TestDatabase.migrated(dir.resolve("writer.db"));
+        try (ConnectionManager.Lease lease = connections.writer(); Statement s = lease.connection().createStatement()) {
+            KeywordCategorizer first = KeywordCategorizer.current(lease);
+            assertSame(first, KeywordCategorizer.current(lease));
+            assertEquals(KeywordCategorizer.UNCATEGORIZED, first.categorize("Zorblax subscription"));
+
+            s.executeUpdate("INSERT INTO category_rules (keyword, category_id, priority) VALUES ('zorblax', 6, 10)");
+            KeywordCategorizer changed = KeywordCategorizer.current(lease);
+            assertNotSame(first, changed);
+            assertEquals(6, changed.categorize("Zorblax subscription"));
+        }
+        connections.close();
+    }
+
+    // Category the row went in with, 0 for none; the same for every row with the description
+    private static int category(ConnectionManager connections, String description) throws SQLException {
+        try (ConnectionManager.Lease lease = connections.reader()) {
+            PreparedStatement ps = lease.prepare("""
+                    SELECT DISTINCT COALESCE(t.category_id, 0), COALESCE(d.category_id, 0)
+                    FROM transactions t JOIN descriptions d ON d.id = t.description_id
+                    WHERE t.description = ?
+                    """);
+            ps.setString(1, description);
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                int category = rs.getInt(1);
+                assertEquals(category, rs.getInt(2));
+                assertFalse(rs.next(), "rows with one description in different categories");
+                return category;
+            }
+        }
+    }
+}